@@ -0,0 +1,80 @@
+import utils.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * 批量编译: 在同一个JVM中并行编译多个源文件, 省去每个文件都启动一次JVM并重新预热的开销
+ * 参数为源文件或目录, 目录中的 testfile*.txt 和 *.sy 文件都作为源文件
+ * 每个源文件的输出写在其旁边, 如 testfile1.txt 输出到 testfile1_error.txt 和 testfile1_llvm_ir.txt
+ */
+public class BatchCompiler {
+    /**
+     * 编译所有源文件, 某个文件编译失败不影响其他文件
+     * @return 是否全部编译成功
+     */
+    public static boolean compileAll(String[] args) throws IOException {
+        List<Path> sources = collectSources(args);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Path source : sources) {
+                tasks.add(pool.submit(() -> compile(source)));
+            }
+            boolean success = true;
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).join();
+                } catch (RuntimeException | Error e) {
+                    success = false;
+                    System.err.println(sources.get(i) + ": " + e);
+                }
+            }
+            return success;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<Path> collectSources(String[] args) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(BatchCompiler::isSource).sorted().forEach(sources::add);
+                }
+            } else {
+                sources.add(path);
+            }
+        }
+        return sources;
+    }
+
+    private static boolean isSource(Path path) {
+        String name = path.getFileName().toString();
+        if (!Files.isRegularFile(path) || IOUtils.isOutputFile(name)) {
+            return false;
+        }
+        return name.endsWith(".sy") || (name.startsWith("testfile") && name.endsWith(".txt"));
+    }
+
+    private static void compile(Path source) {
+        String path = source.toString();
+        int dot = path.lastIndexOf('.');
+        String base = dot > path.lastIndexOf(source.getFileSystem().getSeparator()) ? path.substring(0, dot) : path;
+        try {
+            new CompilationContext(base).compile(IOUtils.readChars(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
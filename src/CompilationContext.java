@@ -0,0 +1,136 @@
+import config.Config;
+import error.ErrorHandler;
+import frontend.Lexer;
+import frontend.Parser;
+import ir.IRBuildFactory;
+import ir.IRModule;
+import ir.SpeculationFailedException;
+import ir.Vistor;
+import node.VNode;
+import token.TokenStream;
+import utils.IOUtils;
+import utils.OutputSink;
+
+import java.io.IOException;
+
+/**
+ * 一次编译所需的各阶段实例
+ * 各阶段都带有编译过程中的状态, 每编译一个源文件就新建一个CompilationContext,
+ * 这样同一个JVM中可以依次编译多个源文件而互不影响
+ */
+public class CompilationContext {
+    private final Lexer lexer;
+    private final ErrorHandler errorHandler;
+    private final Parser parser;
+    // 融合检查模式下推测生成的中间代码作废时会重新创建
+    private IRModule irModule;
+    private IRBuildFactory factory;
+    private Vistor vistor;
+    // 批量编译时输出文件的前缀, 为null时输出到默认的error.txt和llvm_ir.txt
+    private final String outputBase;
+
+    public CompilationContext() {
+        this(null);
+    }
+
+    /**
+     * @param outputBase 输出文件的前缀, 输出到 outputBase_error.txt 和 outputBase_llvm_ir.txt
+     */
+    public CompilationContext(String outputBase) {
+        this.outputBase = outputBase;
+        lexer = new Lexer();
+        errorHandler = new ErrorHandler();
+        parser = new Parser(errorHandler);
+        irModule = new IRModule();
+        factory = new IRBuildFactory(irModule);
+        vistor = new Vistor(factory, Config.ERROR && Config.FUSED_CHECK);
+    }
+
+    public Lexer getLexer() {
+        return lexer;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    public IRModule getIRModule() {
+        return irModule;
+    }
+
+    public IRBuildFactory getFactory() {
+        return factory;
+    }
+
+    public Vistor getVistor() {
+        return vistor;
+    }
+
+    /**
+     * 编译源代码, 输出错误信息, 没有错误时输出中间代码
+     */
+    public void compile(char[] source) throws IOException {
+        // 词法分析
+        TokenStream tokens = Config.STREAM_TOKENS ? lexer.transChars2Stream(source) : lexer.transChars2Tokens(source);
+
+        // 语法分析
+        VNode compUnitNode = parser.transTokens2VNode(tokens);
+//        try (OutputSink output = IOUtils.openOutput()) {
+//            compUnitNode.printToSink(output);
+//        }
+
+        // 融合检查: 语法分析没有发现错误时, 先在生成中间代码的同时检查, 通过则无需再单独遍历一次语法树
+        if (Config.ERROR && Config.FUSED_CHECK && !errorHandler.hasError() && compileFused(compUnitNode)) {
+            return;
+        }
+
+        boolean hasError = false;
+        // 错误处理
+        if (Config.ERROR) {
+            errorHandler.CompUnitError(compUnitNode);
+            hasError = errorHandler.hasError();
+            printErrors();
+        }
+
+        // 中间代码生成
+        if (!hasError) {
+            vistor.visitCompUnit(compUnitNode);
+            printIR();
+        }
+    }
+
+    /**
+     * 推测地生成中间代码, 同时进行保守的语义检查
+     * @return 通过检查时输出(空的)错误信息和中间代码, 返回true; 否则丢弃已生成的中间代码, 返回false
+     */
+    private boolean compileFused(VNode compUnitNode) throws IOException {
+        try {
+            vistor.visitCompUnit(compUnitNode);
+        } catch (SpeculationFailedException e) {
+            // 其他异常是中间代码生成本身的错误, 不应当被当作推测失败而掩盖
+            irModule = new IRModule();
+            factory = new IRBuildFactory(irModule);
+            vistor = new Vistor(factory);
+            return false;
+        }
+        printErrors();
+        printIR();
+        return true;
+    }
+
+    private void printErrors() throws IOException {
+        try (OutputSink error = outputBase == null ? IOUtils.openError() : IOUtils.openError(outputBase)) {
+            errorHandler.printErrors2Sink(error);
+        }
+    }
+
+    private void printIR() throws IOException {
+        try (OutputSink ir = outputBase == null ? IOUtils.openIR() : IOUtils.openIR(outputBase)) {
+            irModule.print2Sink(ir);
+        }
+    }
+}
@@ -3,4 +3,14 @@ package config;
 public class Config {
     public static final boolean ERROR = true;
     public static final boolean DEBUG = false;
+    // 流式词法分析: Parser按需从Lexer拉取token, 不物化完整的token序列
+    public static final boolean STREAM_TOKENS = false;
+    // 很长的源代码分块并行进行词法分析
+    public static final boolean PARALLEL_LEX = true;
+    // 各函数体的中间代码并行生成
+    public static final boolean PARALLEL_IR = true;
+    // 各函数体的语义检查并行进行
+    public static final boolean PARALLEL_CHECK = true;
+    // 融合检查: 语法分析没有错误时, 在生成中间代码的同时进行语义检查, 发现可能的错误才回退到ErrorHandler
+    public static final boolean FUSED_CHECK = false;
 }
@@ -4,43 +4,56 @@
  */
 package error;
 
+import config.Config;
 import node.NodeType;
+import node.SyntaxTree;
 import node.VNode;
 import symbol.*;
 import token.TokenType;
-import utils.IOUtils;
+import utils.OutputSink;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
 
 public class ErrorHandler {
-    private static ErrorHandler instance = null;
+    // 各函数体并行检查时共享的错误集合
+    private final Set<Error> errorSet;
 
-    private ErrorHandler() {
+    public ErrorHandler() {
+        this(ConcurrentHashMap.newKeySet());
     }
 
-    public static ErrorHandler getInstance() {
-        if (instance == null) {
-            instance = new ErrorHandler();
-        }
-        return instance;
+    /**
+     * 检查函数体用的ErrorHandler, 错误加入共享的errorSet, 作用域和其余状态各自独立
+     */
+    private ErrorHandler(Set<Error> errorSet) {
+        this.errorSet = errorSet;
     }
 
-    private final Set<Error> errorSet = new HashSet<>();
-
     private int inLoop = 0;
 
-    private SymbolTable currentTable = null;
+    // 各层作用域共用的符号表
+    private ScopeTable<Symbol> table = null;
     private FuncType currentFuncType = null;
 
+    private void addSymbol(Symbol symbol) {
+        table.put(symbol.getIdent(), symbol);
+    }
+
     public void addError(Error error) {
         errorSet.add(error);
     }
 
-    public void printErrors2Buffer() {
+    public boolean hasError() {
+        return !errorSet.isEmpty();
+    }
+
+    public void printErrors2Sink(OutputSink sink) {
         List<Error> toSort = new ArrayList<>(errorSet);
         toSort.sort(null);
         for (Error error : toSort) {
-            IOUtils.appendBuffer(error.toString());
+            sink.newItem().append(error.getLine()).append(' ').append(error.getType().toString());
         }
     }
 
@@ -48,39 +61,28 @@ public class ErrorHandler {
         VOID, INT
     }
 
-    private final Map<String, TokenType> tokenTypeMap = new HashMap<>() {{
-        for (TokenType tokenType : TokenType.values()) {
-            put(tokenType.toString(), tokenType);
-        }
-    }};
-    /**
-     * 从语法树中的终结符节点获取其TokenType
-     * @param endNode 终结符
-     * @return TokenType枚举
-     */
-    private TokenType getEndNodeTokenType(VNode endNode) {
-        String s = endNode.getValue().split(" ")[0];
-        return tokenTypeMap.getOrDefault(s, null);
-    }
-
-    /**
-     * 从语法树中的终结符节点获取其值
-     * @param endNode 终结符
-     * @return 形如";"或"a"的字符串
-     */
-    private String getEndNodeValue(VNode endNode) {
-        String s = endNode.getValue();
-        return s.substring(s.indexOf(" ") + 1);
-    }
-
     // CompUnit → {Decl} {FuncDef} MainFuncDef
+    // 先依次检查全局声明和各函数的签名, 之后各函数体只依赖其之前定义的全局符号, 可以并行检查
     public void CompUnitError(VNode compUnitNode) {
-        currentTable = new SymbolTable(null);
-        for (VNode child : compUnitNode.getChildrenNodes()) {
+        table = new ScopeTable<>();
+        table.enterScope();
+        List<Runnable> funcBodies = new ArrayList<>();
+        for (VNode child : compUnitNode.children()) {
             switch (child.getNodeType()) {
                 case Decl -> DeclError(child);
-                case FuncDef -> FuncDefError(child);
-                case MainFuncDef -> MainFuncDefError(child);
+                case FuncDef -> funcBodies.add(FuncDefError(child));
+                case MainFuncDef -> funcBodies.add(MainFuncDefError(child));
+            }
+        }
+        if (Config.PARALLEL_CHECK && funcBodies.size() > 1) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Runnable funcBody : funcBodies) {
+                tasks.add(ForkJoinTask.adapt(funcBody));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (Runnable funcBody : funcBodies) {
+                funcBody.run();
             }
         }
     }
@@ -96,7 +98,7 @@ public class ErrorHandler {
 
     // ConstDecl → 'const' BType ConstDef { ',' ConstDef } ';' // i handled in Parser
     private void ConstDeclError(VNode constDeclNode) {
-        for (VNode node : constDeclNode.getChildrenNodes()) {
+        for (VNode node : constDeclNode.children()) {
             if (node.getNodeType() == NodeType.ConstDef) {
                 ConstDefError(node);
             }
@@ -106,7 +108,7 @@ public class ErrorHandler {
     // ConstDef → Ident { '[' ConstExp ']' } '=' ConstInitVal  // b k, k handled in Parser
     private void ConstDefError(VNode constDefNode) {
         VNode identNode = constDefNode.get1stChildNode();
-        if (currentTable.getSymbolByName(getEndNodeValue(identNode), false) != null) {
+        if (table.getInCurrentScope(identNode.getTokenIdent()) != null) {
             addError(new Error(ErrorType.b, identNode.getLine()));
         }
         int dimension = 0;
@@ -120,7 +122,7 @@ public class ErrorHandler {
                 case ConstInitVal -> ConstInitValError(node);
             }
         }
-        currentTable.addSymbol(new ArraySymbol(getEndNodeValue(identNode), dimension, true));
+        addSymbol(new ArraySymbol(identNode.getTokenIdent(), identNode.getTokenValue(), dimension, true));
     }
 
     // ConstInitVal → ConstExp
@@ -130,7 +132,7 @@ public class ErrorHandler {
         switch (child.getNodeType()) {
             case ConstExp -> ConstExpError(child);
             case EndNode -> {
-                for (VNode node : constInitValNode.getChildrenNodes()) {
+                for (VNode node : constInitValNode.children()) {
                     if (node.getNodeType() == NodeType.ConstInitVal) {
                         ConstInitValError(node);
                     }
@@ -141,7 +143,7 @@ public class ErrorHandler {
 
     // VarDecl → BType VarDef { ',' VarDef } ';' // i handled in Parser
     private void VarDeclError(VNode varDeclNode) {
-        for (VNode node : varDeclNode.getChildrenNodes()) {
+        for (VNode node : varDeclNode.children()) {
             if (node.getNodeType() == NodeType.VarDef) {
                 VarDefError(node);
             }
@@ -153,7 +155,7 @@ public class ErrorHandler {
     //    | Ident { '[' ConstExp ']' } '=' InitVal // k handled in Parser
     private void VarDefError(VNode varDefNode) {
         VNode identNode = varDefNode.get1stChildNode();
-        if (currentTable.getSymbolByName(getEndNodeValue(identNode), false) != null) {
+        if (table.getInCurrentScope(identNode.getTokenIdent()) != null) {
             addError(new Error(ErrorType.b, identNode.getLine()));
         }
         int dimension = 0;
@@ -167,7 +169,7 @@ public class ErrorHandler {
                 case InitVal -> InitValError(node);
             }
         }
-        currentTable.addSymbol(new ArraySymbol(getEndNodeValue(identNode), dimension, false));
+        addSymbol(new ArraySymbol(identNode.getTokenIdent(), identNode.getTokenValue(), dimension, false));
     }
 
     // InitVal → Exp | '{' [ InitVal { ',' InitVal } ] '}'
@@ -176,7 +178,7 @@ public class ErrorHandler {
         switch (child.getNodeType()) {
             case Exp -> ExpError(child);
             case EndNode -> {
-                for (VNode node : initValNode.getChildrenNodes()) {
+                for (VNode node : initValNode.children()) {
                     if (node.getNodeType() == NodeType.InitVal) {
                         InitValError(node);
                     }
@@ -192,7 +194,7 @@ public class ErrorHandler {
      */
     private FuncType getFuncType(VNode funcTypeNode) {
         VNode endNode = funcTypeNode.get1stChildNode();
-        String funcType = getEndNodeValue(endNode);
+        String funcType = endNode.getTokenValue();
         if (funcType.equals("void")) {
             return FuncType.VOID;
         } else if (funcType.equals("int")) {
@@ -202,17 +204,15 @@ public class ErrorHandler {
     }
 
     // FuncDef → FuncType Ident '(' [FuncFParams] ')' Block // b g j, j handled in Parser
-    private void FuncDefError(VNode funcDefNode) {
+    // 这里检查函数签名并将函数加入全局符号表, 返回之后检查函数体的任务
+    private Runnable FuncDefError(VNode funcDefNode) {
         FuncType funcType = getFuncType(funcDefNode.get1stChildNode());
-        currentFuncType = funcType;
         VNode identNode = funcDefNode.getChildNode(1);
-        if (currentTable.getSymbolByName(getEndNodeValue(identNode), false) != null) {
+        if (table.getInCurrentScope(identNode.getTokenIdent()) != null) {
             addError(new Error(ErrorType.b, identNode.getLine()));
         }
-        SymbolTable nextTable = new SymbolTable(currentTable);
-        currentTable.addChildTable(nextTable);
-        // 切换当前的符号表
-        currentTable = nextTable;
+        // 形参在单独的作用域中检查
+        table.enterScope();
         // 第4个节点可能是FuncFParams也可能是')'
         VNode fourthNode = funcDefNode.getChildNode(3);
         // 参数列表默认为空
@@ -221,30 +221,38 @@ public class ErrorHandler {
             // 此时参数存在, 则应在符号表中添加参数, TODOn: 此时在FuncFParamsError中要填写参数列表
             FuncFParamsError(fourthNode, params);
         }
-        currentTable.getParentTable().addSymbol(new symbol.FuncSymbol(getEndNodeValue(identNode), funcType, params));
-        VNode blockNode = funcDefNode.getLastChildNode();
-        // TODOn: 此时在BlockError中要返回return的类型
-        ReturnType returnType = BlockError(blockNode);
-        // 切换回父符号表
-        currentTable = currentTable.getParentTable();
-        if (funcType == FuncType.INT && returnType == ReturnType.VOID) {
-            addError(new Error(ErrorType.g, blockNode.getLine()));
-        }
-        currentFuncType = null;
+        table.exitScope();
+        addSymbol(new FuncSymbol(identNode.getTokenIdent(), identNode.getTokenValue(), funcType, params));
+        return FuncBodyError(funcType, params, funcDefNode.getLastChildNode());
     }
 
     // MainFuncDef → 'int' 'main' '(' ')' Block // g j, j handled in Parser
-    private void MainFuncDefError(VNode mainFuncDefNode) {
-        VNode blockNode = mainFuncDefNode.getLastChildNode();
-        currentFuncType = FuncType.INT;
-        SymbolTable nextTable = new SymbolTable(currentTable);
-        currentTable.addChildTable(nextTable);
-        // 切换当前的符号表
-        currentTable = nextTable;
+    private Runnable MainFuncDefError(VNode mainFuncDefNode) {
+        return FuncBodyError(FuncType.INT, new ArrayList<>(), mainFuncDefNode.getLastChildNode());
+    }
+
+    /**
+     * 生成检查函数体的任务
+     * 函数体由独立的ErrorHandler在只包含此前定义的全局符号的视图中检查, 错误加入共享的errorSet
+     */
+    private Runnable FuncBodyError(FuncType funcType, List<ArraySymbol> params, VNode blockNode) {
+        ScopeTable.View<Symbol> globalView = table.getView();
+        return () -> new ErrorHandler(errorSet).FuncBodyError(globalView, funcType, params, blockNode);
+    }
+
+    // 函数体 Block // g
+    private void FuncBodyError(ScopeTable.View<Symbol> globalView, FuncType funcType, List<ArraySymbol> params, VNode blockNode) {
+        currentFuncType = funcType;
+        // 形参与函数体最外层的局部变量在同一个作用域中
+        table = new ScopeTable<>(globalView);
+        table.enterScope();
+        for (ArraySymbol param : params) {
+            addSymbol(param);
+        }
+        // TODOn: 此时在BlockError中要返回return的类型
         ReturnType returnType = BlockError(blockNode);
-        // 切换回父符号表
-        currentTable = currentTable.getParentTable();
-        if (returnType == ReturnType.VOID) {
+        table = null;
+        if (funcType == FuncType.INT && returnType == ReturnType.VOID) {
             addError(new Error(ErrorType.g, blockNode.getLine()));
         }
         currentFuncType = null;
@@ -252,11 +260,11 @@ public class ErrorHandler {
 
     // FuncFParams → FuncFParam { ',' FuncFParam }, TODOn: 此时在FuncFParamsError中要填写参数列表, 同时在此将参数分别作为临时变量加入符号表
     private void FuncFParamsError(VNode funcFParamsNode, List<ArraySymbol> params) {
-        for (VNode node : funcFParamsNode.getChildrenNodes()) {
+        for (VNode node : funcFParamsNode.children()) {
             if (node.getNodeType() == NodeType.FuncFParam) {
                 ArraySymbol param = FuncFParamError(node);
                 params.add(param);
-                currentTable.addSymbol(param);
+                addSymbol(param);
             }
         }
     }
@@ -264,7 +272,7 @@ public class ErrorHandler {
     // FuncFParam → BType Ident ['[' ']' { '[' ConstExp ']' }]  //   b k, k handled in Parser, TODOn: 返回参数符号表对象
     private ArraySymbol FuncFParamError(VNode funcFParamNode) {
         VNode identNode = funcFParamNode.getChildNode(1);
-        if (currentTable.getSymbolByName(getEndNodeValue(identNode), false) != null) {
+        if (table.getInCurrentScope(identNode.getTokenIdent()) != null) {
             addError(new Error(ErrorType.b, identNode.getLine()));
         }
         int dimension = 0;
@@ -272,17 +280,17 @@ public class ErrorHandler {
         for (VNode node : childrenNodes) {
             if (node.getNodeType() == NodeType.ConstExp) {
                 ConstExpError(node);
-            } else if (node.getNodeType() == NodeType.EndNode && getEndNodeTokenType(node) == TokenType.LBRACK) {
+            } else if (node.getNodeType() == NodeType.EndNode && node.getTokenType() == TokenType.LBRACK) {
                 dimension++;
             }
         }
-        return new ArraySymbol(getEndNodeValue(identNode), dimension, false);
+        return new ArraySymbol(identNode.getTokenIdent(), identNode.getTokenValue(), dimension, false);
     }
 
     // Block → '{' { BlockItem } '}' TODOn: 此时在BlockError中要返回return的类型
     private ReturnType BlockError(VNode blockNode) {
         ReturnType returnType = ReturnType.VOID;
-        for (VNode node : blockNode.getChildrenNodes()) {
+        for (VNode node : blockNode.children()) {
             if (node.getNodeType() == NodeType.BlockItem) {
                 // TODOn: 在BlockItemError中要返回return的类型, 最后一个BlockItem的返回值作为Block的返回值
                 returnType = BlockItemError(node);
@@ -307,8 +315,8 @@ public class ErrorHandler {
         return ReturnType.VOID;
     }
 
-    private String getLValNodeName(VNode lValNode) {
-        return getEndNodeValue(lValNode.get1stChildNode());
+    private int getLValNodeIdent(VNode lValNode) {
+        return lValNode.get1stChildNode().getTokenIdent();
     }
 
     // Stmt → LVal '=' Exp ';' | [Exp] ';' | Block // h i
@@ -320,93 +328,114 @@ public class ErrorHandler {
     //    | 'printf''('FormatString{,Exp}')'';' // i j l
     // i, j handled in Parser
     private ReturnType StmtError(VNode stmtNode) {
-        ReturnType returnType = ReturnType.VOID;
-        List<VNode> childrenNodes = stmtNode.getChildrenNodes();
-        VNode firstNode = stmtNode.get1stChildNode();
-        boolean addedInLoop = false;
-        // 第一个节点为EndNode时(只处理错误而不递归遍历字数)
-        if (firstNode.getNodeType() == NodeType.EndNode) {
-            switch (getEndNodeTokenType(firstNode)) {
-                // 'for' '('[ForStmt] ';' [Cond] ';' [ForStmt] ')' Stmt
-                case FORTK -> {
-                    inLoop++;
-                    addedInLoop = true;
-                }
-                // 'break' ';' | 'continue' ';', m
-                case BREAKTK, CONTINUETK -> {
-                    if (inLoop <= 0) {
-                        addError(new Error(ErrorType.m, firstNode.getLine()));
+        // if语句中else之前的if分支不影响整个语句的返回类型, 不递归检查, 留到整个语句检查完后再从栈中取出检查
+        Deque<VNode> pendingStmts = new ArrayDeque<>();
+        ReturnType stmtReturnType = null;
+        while (true) {
+            ReturnType returnType = ReturnType.VOID;
+            List<VNode> childrenNodes = stmtNode.getChildrenNodes();
+            VNode firstNode = stmtNode.get1stChildNode();
+            boolean addedInLoop = false;
+            boolean isIfStmt = firstNode.getNodeType() == NodeType.EndNode && firstNode.getTokenType() == TokenType.IFTK;
+            VNode tailStmt = null;
+            // 第一个节点为EndNode时(只处理错误而不递归遍历字数)
+            if (firstNode.getNodeType() == NodeType.EndNode) {
+                switch (firstNode.getTokenType()) {
+                    // 'for' '('[ForStmt] ';' [Cond] ';' [ForStmt] ')' Stmt
+                    case FORTK -> {
+                        inLoop++;
+                        addedInLoop = true;
                     }
-                }
-                // 'return' [Exp] ';', f
-                case RETURNTK -> {
-                    if (childrenNodes.size() > 2) {
-                        returnType = ReturnType.INT;
-                        if (currentFuncType == FuncType.VOID) {
-                            addError(new Error(ErrorType.f, firstNode.getLine()));
+                    // 'break' ';' | 'continue' ';', m
+                    case BREAKTK, CONTINUETK -> {
+                        if (inLoop <= 0) {
+                            addError(new Error(ErrorType.m, firstNode.getLine()));
                         }
                     }
-                }
-                // 'printf''('FormatString{,Exp}')'';', l
-                case PRINTFTK -> {
-                    VNode thirdNode = stmtNode.getChildNode(2);
-                    if (thirdNode.getNodeType() == NodeType.EndNode) {
-                        String str = getEndNodeValue(thirdNode);
-                        int modelCnt = 0, expCnt = 0;
-                        for (int i = 0; i < str.length(); ++i) {
-                            if (str.charAt(i) == '%' && i + 1 < str.length() && str.charAt(i + 1) == 'd') {
-                                modelCnt++;
+                    // 'return' [Exp] ';', f
+                    case RETURNTK -> {
+                        if (childrenNodes.size() > 2) {
+                            returnType = ReturnType.INT;
+                            if (currentFuncType == FuncType.VOID) {
+                                addError(new Error(ErrorType.f, firstNode.getLine()));
                             }
                         }
-                        for (VNode node : childrenNodes) {
-                            if (node.getNodeType() == NodeType.Exp) {
-                                expCnt++;
+                    }
+                    // 'printf''('FormatString{,Exp}')'';', l
+                    case PRINTFTK -> {
+                        VNode thirdNode = stmtNode.getChildNode(2);
+                        if (thirdNode.getNodeType() == NodeType.EndNode) {
+                            String str = thirdNode.getTokenValue();
+                            int modelCnt = 0, expCnt = 0;
+                            for (int i = 0; i < str.length(); ++i) {
+                                if (str.charAt(i) == '%' && i + 1 < str.length() && str.charAt(i + 1) == 'd') {
+                                    modelCnt++;
+                                }
+                            }
+                            for (VNode node : childrenNodes) {
+                                if (node.getNodeType() == NodeType.Exp) {
+                                    expCnt++;
+                                }
+                            }
+                            if (modelCnt != expCnt) {
+                                addError(new Error(ErrorType.l, firstNode.getLine()));
                             }
-                        }
-                        if (modelCnt != expCnt) {
-                            addError(new Error(ErrorType.l, firstNode.getLine()));
                         }
                     }
                 }
             }
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                // TODOn: h - 左值不能是常量(不判断是否为函数, 如果匹配的为函数名, 应报错"符号未定义")
-                case LVal -> {
-                    String name = getLValNodeName(node);
-                    Symbol symbol = currentTable.getSymbolByName(name, true);
-                    if (symbol instanceof ArraySymbol && ((ArraySymbol) symbol).isConst()) {
-                        addError(new Error(ErrorType.h, node.getLine()));
+            for (VNode node : childrenNodes) {
+                switch (node.getNodeType()) {
+                    // TODOn: h - 左值不能是常量(不判断是否为函数, 如果匹配的为函数名, 应报错"符号未定义")
+                    case LVal -> {
+                        Symbol symbol = table.get(getLValNodeIdent(node));
+                        if (symbol instanceof ArraySymbol && ((ArraySymbol) symbol).isConst()) {
+                            addError(new Error(ErrorType.h, node.getLine()));
+                        }
+                        LValError(node);
                     }
-                    LValError(node);
-                }
-                case Exp -> ExpError(node);
-                case Block -> {
-                    SymbolTable nextTable = new SymbolTable(currentTable);
-                    currentTable.addChildTable(nextTable);
-                    // 切换当前的符号表
-                    currentTable = nextTable;
-                    returnType = BlockError(node);
-                    // 切换回父符号表
-                    currentTable = currentTable.getParentTable();
+                    case Exp -> ExpError(node);
+                    case Block -> {
+                        table.enterScope();
+                        returnType = BlockError(node);
+                        table.exitScope();
+                    }
+                    case Cond -> CondError(node);
+                    case Stmt -> {
+                        if (isIfStmt && node.getNextSibling() == null) {
+                            tailStmt = node;
+                        } else if (isIfStmt) {
+                            pendingStmts.push(node);
+                        } else {
+                            returnType = StmtError(node);
+                        }
+                    }
+                    case ForStmt -> ForStmtError(node);
                 }
-                case Cond -> CondError(node);
-                case Stmt -> returnType = StmtError(node);
-                case ForStmt -> ForStmtError(node);
             }
+            if (addedInLoop) {
+                inLoop--;
+            }
+            if (tailStmt != null) {
+                // if语句最后一个Stmt的返回类型即为整个语句的返回类型, 在循环中继续检查而不递归, else if链再长也不会耗尽调用栈
+                stmtNode = tailStmt;
+                continue;
+            }
+            if (stmtReturnType == null) {
+                stmtReturnType = returnType;
+            }
+            if (pendingStmts.isEmpty()) {
+                return stmtReturnType;
+            }
+            // 内嵌的if语句同样在循环中检查, 栈中的Stmt和当前语句处于同一作用域和同一层循环中
+            stmtNode = pendingStmts.pop();
         }
-        if (addedInLoop) {
-            inLoop--;
-        }
-        return returnType;
     }
 
     // ForStmt → LVal '=' Exp   //h
     private void ForStmtError(VNode forStmtNode) {
         VNode lValNode = forStmtNode.get1stChildNode();
-        String name = getLValNodeName(lValNode);
-        Symbol symbol = currentTable.getSymbolByName(name, true);
+        Symbol symbol = table.get(getLValNodeIdent(lValNode));
         if (symbol instanceof ArraySymbol && ((ArraySymbol) symbol).isConst()) {
             addError(new Error(ErrorType.h, lValNode.getLine()));
         }
@@ -416,18 +445,18 @@ public class ErrorHandler {
 
     // Exp → AddExp 注：SysY 表达式是int 型表达式
     private ArraySymbol ExpError(VNode expNode) {
-        return AddExpError(expNode.get1stChildNode());
+        return BinaryExpError(expNode.get1stChildNode());
     }
 
     // Cond → LOrExp
     private void CondError(VNode condNode) {
-        LOrExpError(condNode.get1stChildNode());
+        BinaryExpError(condNode.get1stChildNode());
     }
 
     // LVal → Ident {'[' Exp ']'} // c k, k handled in Parser
     private ArraySymbol LValError(VNode lValNode) {
         VNode identNode = lValNode.get1stChildNode();
-        Symbol symbol = currentTable.getSymbolByName(getEndNodeValue(identNode), true);
+        Symbol symbol = table.get(identNode.getTokenIdent());
         if (!(symbol instanceof ArraySymbol)) {
             addError(new Error(ErrorType.c, identNode.getLine()));
         }
@@ -442,69 +471,42 @@ public class ErrorHandler {
                 ExpError(node);
             }
         }
-        return new ArraySymbol(getEndNodeValue(identNode), Math.max(0, dimension), false);
+        return new ArraySymbol(identNode.getTokenValue(), Math.max(0, dimension), false);
     }
 
-    // PrimaryExp → '(' Exp ')' | LVal | Number
-    private ArraySymbol PrimaryExpError(VNode primaryExpNode) {
-        for (VNode node : primaryExpNode.getChildrenNodes()) {
-            switch (node.getNodeType()) {
-                case Exp -> ExpError(node);
-                case LVal -> {
-                    return LValError(node);
-                }
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
-    // UnaryExp → PrimaryExp | Ident '(' [FuncRParams] ')' // c d e j, j handled in Parser
-    //        | UnaryOp UnaryExp
-    private ArraySymbol UnaryExpError(VNode unaryExpNode) {
+    // UnaryExp → Ident '(' [FuncRParams] ')' // c d e j, j handled in Parser
+    private ArraySymbol FuncCallError(VNode unaryExpNode) {
         VNode firstNode = unaryExpNode.get1stChildNode();
-        switch (firstNode.getNodeType()) {
-            case PrimaryExp -> {
-                return PrimaryExpError(firstNode);
-            }
-            case UnaryOp -> UnaryExpError(unaryExpNode.getChildNode(1));
-            case EndNode -> {
-                TokenType tokenType = getEndNodeTokenType(firstNode);
-                if (tokenType == TokenType.IDENFR) {
-                    String name = getEndNodeValue(firstNode);
-                    Symbol symbol = currentTable.getSymbolByName(name, true);
-                    if (!(symbol instanceof FuncSymbol funcSymbol)) {
-                        addError(new Error(ErrorType.c, firstNode.getLine()));
-                        return new ArraySymbol("", 0, false);
-                    }
-                    List<ArraySymbol> fParams = funcSymbol.getParams();
-                    List<ArraySymbol> rParams = new ArrayList<>();
-                    VNode thirdNode = unaryExpNode.getChildNode(2);
-                    if (thirdNode != null && thirdNode.getNodeType() == NodeType.FuncRParams) {
-                        // TODOn: FuncRParamsError要返回参数列表
-                        rParams = FuncRParamsError(thirdNode);
-                    }
-                    if (fParams.size() != rParams.size()) {
-                        addError(new Error(ErrorType.d, firstNode.getLine()));
-                    } else {
-                        for (int i = 0; i < fParams.size(); ++i) {
-                            ArraySymbol fParam = fParams.get(i);
-                            ArraySymbol rParam = rParams.get(i);
-                            if (fParam.getDimension() != rParam.getDimension()) {
-                                addError(new Error(ErrorType.e, firstNode.getLine()));
-                            }
-                        }
-                    }
-                    return new ArraySymbol(funcSymbol.getName(), funcSymbol.getType() == FuncType.INT ? 0 : -1, false);
+        Symbol symbol = table.get(firstNode.getTokenIdent());
+        if (!(symbol instanceof FuncSymbol funcSymbol)) {
+            addError(new Error(ErrorType.c, firstNode.getLine()));
+            return new ArraySymbol("", 0, false);
+        }
+        List<ArraySymbol> fParams = funcSymbol.getParams();
+        List<ArraySymbol> rParams = new ArrayList<>();
+        VNode thirdNode = unaryExpNode.getChildNode(2);
+        if (thirdNode != null && thirdNode.getNodeType() == NodeType.FuncRParams) {
+            // TODOn: FuncRParamsError要返回参数列表
+            rParams = FuncRParamsError(thirdNode);
+        }
+        if (fParams.size() != rParams.size()) {
+            addError(new Error(ErrorType.d, firstNode.getLine()));
+        } else {
+            for (int i = 0; i < fParams.size(); ++i) {
+                ArraySymbol fParam = fParams.get(i);
+                ArraySymbol rParam = rParams.get(i);
+                if (fParam.getDimension() != rParam.getDimension()) {
+                    addError(new Error(ErrorType.e, firstNode.getLine()));
                 }
             }
         }
-        return new ArraySymbol("", 0, false);
+        return new ArraySymbol(funcSymbol.getName(), funcSymbol.getType() == FuncType.INT ? 0 : -1, false);
     }
 
     // FuncRParams → Exp { ',' Exp }
     private List<ArraySymbol> FuncRParamsError(VNode funcRParamsNode) {
         List<ArraySymbol> rParams = new ArrayList<>();
-        for (VNode node : funcRParamsNode.getChildrenNodes()) {
+        for (VNode node : funcRParamsNode.children()) {
             if (node.getNodeType() == NodeType.Exp) {
                 rParams.add(ExpError(node));
             }
@@ -513,97 +515,61 @@ public class ErrorHandler {
     }
 
     // MulExp → UnaryExp | MulExp ('*' | '/' | '%') UnaryExp
-    private ArraySymbol MulExpError(VNode mulExpNode) {
-        List<VNode> childrenNodes = mulExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return UnaryExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case UnaryExp -> UnaryExpError(node);
-                case MulExp -> MulExpError(node);
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
     // AddExp → MulExp | AddExp ('+' | '−') MulExp
-    private ArraySymbol AddExpError(VNode addExpNode) {
-        List<VNode> childrenNodes = addExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return MulExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case MulExp -> MulExpError(node);
-                case AddExp -> AddExpError(node);
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
     // RelExp → AddExp | RelExp ('<' | '>' | '<=' | '>=') AddExp
-    private ArraySymbol RelExpError(VNode relExpNode) {
-        List<VNode> childrenNodes = relExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return AddExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case AddExp -> AddExpError(node);
-                case RelExp -> RelExpError(node);
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
     // EqExp → RelExp | EqExp ('==' | '!=') RelExp
-    private ArraySymbol EqExpError(VNode eqExpNode) {
-        List<VNode> childrenNodes = eqExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return RelExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case RelExp -> RelExpError(node);
-                case EqExp -> EqExpError(node);
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
     // LAndExp → EqExp | LAndExp '&&' EqExp
-    private ArraySymbol LAndExpError(VNode lAndExpNode) {
-        List<VNode> childrenNodes = lAndExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return EqExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case EqExp -> EqExpError(node);
-                case LAndExp -> LAndExpError(node);
-            }
-        }
-        return new ArraySymbol("", 0, false);
-    }
-
     // LOrExp → LAndExp | LOrExp '||' LAndExp
-    private ArraySymbol LOrExpError(VNode lOrExpNode) {
-        List<VNode> childrenNodes = lOrExpNode.getChildrenNodes();
-        if (childrenNodes.size() == 1) {
-            return LAndExpError(childrenNodes.get(0));
-        }
-        for (VNode node : childrenNodes) {
-            switch (node.getNodeType()) {
-                case LAndExp -> LAndExpError(node);
-                case LOrExp -> LOrExpError(node);
+    // 二元表达式平铺存放为 操作数 {运算符 操作数}, 只有一个操作数的层级不生成节点, 此时root即为其唯一的操作数
+    // UnaryExp → PrimaryExp | Ident '(' [FuncRParams] ')' | UnaryOp UnaryExp
+    // PrimaryExp → '(' Exp ')' | LVal | Number
+    // 以显式栈从左到右检查各操作数, 括号和一元运算符嵌套再深也不递归
+    // 只有root本身为LVal或函数调用时表达式才可能不是普通的int值, 此时返回其符号
+    private ArraySymbol BinaryExpError(VNode root) {
+        ArraySymbol result = new ArraySymbol("", 0, false);
+        Deque<VNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            VNode node = stack.pop();
+            if (SyntaxTree.getBinaryLevel(node.getNodeType()) != 0) {
+                List<VNode> childrenNodes = node.getChildrenNodes();
+                for (int i = childrenNodes.size() - 1; i >= 0; --i) {
+                    if (childrenNodes.get(i).getNodeType() != NodeType.EndNode) {
+                        stack.push(childrenNodes.get(i));
+                    }
+                }
+                continue;
+            }
+            VNode firstNode = node.get1stChildNode();
+            switch (firstNode.getNodeType()) {
+                case UnaryOp -> stack.push(node.getChildNode(1));
+                case PrimaryExp -> {
+                    VNode child = firstNode.get1stChildNode();
+                    if (child.getNodeType() == NodeType.LVal) {
+                        ArraySymbol symbol = LValError(child);
+                        if (node.equals(root)) {
+                            result = symbol;
+                        }
+                    } else if (child.getNodeType() == NodeType.EndNode) {
+                        // '(' Exp ')'
+                        stack.push(firstNode.getChildNode(1).get1stChildNode());
+                    }
+                }
+                case EndNode -> {
+                    if (firstNode.getTokenType() == TokenType.IDENFR) {
+                        ArraySymbol symbol = FuncCallError(node);
+                        if (node.equals(root)) {
+                            result = symbol;
+                        }
+                    }
+                }
             }
         }
-        return new ArraySymbol("", 0, false);
+        return result;
     }
 
     // ConstExp → AddExp 注：使用的Ident 必须是常量
     private ArraySymbol ConstExpError(VNode constExpNode) {
-        return AddExpError(constExpNode.get1stChildNode());
+        return BinaryExpError(constExpNode.get1stChildNode());
     }
 }
@@ -1,183 +1,446 @@
 package frontend;
 
-import token.Token;
+import config.Config;
+import token.IdentPool;
+import token.TokenBuffer;
+import token.TokenStream;
 import token.TokenType;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
 public class Lexer {
-    private Lexer() {}
-
-    private static Lexer instance = null;
-
-    public static Lexer getInstance() {
-        if (instance == null) {
-            instance = new Lexer();
-        }
-        return instance;
-    }
-
-    private final List<Token> tokens = new ArrayList<>();
-
-    private final Map<String, TokenType> reserveWords = new HashMap<>() {{
-        put("main", TokenType.MAINTK);
-        put("const", TokenType.CONSTTK);
-        put("int", TokenType.INTTK);
-        put("break", TokenType.BREAKTK);
-        put("continue", TokenType.CONTINUETK);
-        put("if", TokenType.IFTK);
-        put("else", TokenType.ELSETK);
-        put("for", TokenType.FORTK);
-        put("getint", TokenType.GETINTTK);
-        put("printf", TokenType.PRINTFTK);
-        put("return", TokenType.RETURNTK);
-        put("void", TokenType.VOIDTK);
-    }};
-
-    private final Map<String, TokenType> simpleTokens = new HashMap<>() {{
-        put("!=", TokenType.NEQ);
-        put("==", TokenType.EQL);
-        put("<=", TokenType.LEQ);
-        put(">=", TokenType.GEQ);
-        put("!", TokenType.NOT);
-        put("&&", TokenType.AND);
-        put("||", TokenType.OR);
-        put("+", TokenType.PLUS);
-        put("-", TokenType.MINU);
-        put("*", TokenType.MULT);
-        put("/", TokenType.DIV);
-        put("%", TokenType.MOD);
-        put("<", TokenType.LSS);
-        put(">", TokenType.GRE);
-        put("=", TokenType.ASSIGN);
-        put(";", TokenType.SEMICN);
-        put(",", TokenType.COMMA);
-        put("(", TokenType.LPARENT);
-        put(")", TokenType.RPARENT);
-        put("[", TokenType.LBRACK);
-        put("]", TokenType.RBRACK);
-        put("{", TokenType.LBRACE);
-        put("}", TokenType.RBRACE);
-    }};
-
-    private String source = null;
+    public Lexer() {}
+
+    /**
+     * 判断source[offset, offset + length)处的单词是否为保留字
+     * 以首字母和长度直接确定唯一可能的保留字, 再逐字符比较, 不构造String
+     * @return 保留字对应的类型, 不是保留字时为IDENFR
+     */
+    private static TokenType reserveWord(char[] source, int offset, int length) {
+        String word;
+        TokenType type;
+        switch (source[offset]) {
+            case 'b' -> { word = "break"; type = TokenType.BREAKTK; }
+            case 'c' -> {
+                if (length == 5) { word = "const"; type = TokenType.CONSTTK; }
+                else { word = "continue"; type = TokenType.CONTINUETK; }
+            }
+            case 'e' -> { word = "else"; type = TokenType.ELSETK; }
+            case 'f' -> { word = "for"; type = TokenType.FORTK; }
+            case 'g' -> { word = "getint"; type = TokenType.GETINTTK; }
+            case 'i' -> {
+                if (length == 2) { word = "if"; type = TokenType.IFTK; }
+                else { word = "int"; type = TokenType.INTTK; }
+            }
+            case 'm' -> { word = "main"; type = TokenType.MAINTK; }
+            case 'p' -> { word = "printf"; type = TokenType.PRINTFTK; }
+            case 'r' -> { word = "return"; type = TokenType.RETURNTK; }
+            case 'v' -> { word = "void"; type = TokenType.VOIDTK; }
+            default -> {
+                return TokenType.IDENFR;
+            }
+        }
+        if (word.length() != length) {
+            return TokenType.IDENFR;
+        }
+        for (int i = 1; i < length; i++) {
+            if (source[offset + i] != word.charAt(i)) {
+                return TokenType.IDENFR;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * 识别以c开头的符号, nextC为其后的字符
+     * @return 符号的类型, 不是合法的符号时为null; 是否为双字符的符号由类型决定(见isDoubleCharToken)
+     */
+    private static TokenType simpleToken(char c, char nextC) {
+        switch (c) {
+            case '!': return nextC == '=' ? TokenType.NEQ : TokenType.NOT;
+            case '=': return nextC == '=' ? TokenType.EQL : TokenType.ASSIGN;
+            case '<': return nextC == '=' ? TokenType.LEQ : TokenType.LSS;
+            case '>': return nextC == '=' ? TokenType.GEQ : TokenType.GRE;
+            case '&': return nextC == '&' ? TokenType.AND : null;
+            case '|': return nextC == '|' ? TokenType.OR : null;
+            case '+': return TokenType.PLUS;
+            case '-': return TokenType.MINU;
+            case '*': return TokenType.MULT;
+            case '/': return TokenType.DIV;
+            case '%': return TokenType.MOD;
+            case ';': return TokenType.SEMICN;
+            case ',': return TokenType.COMMA;
+            case '(': return TokenType.LPARENT;
+            case ')': return TokenType.RPARENT;
+            case '[': return TokenType.LBRACK;
+            case ']': return TokenType.RBRACK;
+            case '{': return TokenType.LBRACE;
+            case '}': return TokenType.RBRACE;
+            default: return null;
+        }
+    }
+
+    private static boolean isDoubleCharToken(TokenType type) {
+        switch (type) {
+            case NEQ: case EQL: case LEQ: case GEQ: case AND: case OR: return true;
+            default: return false;
+        }
+    }
+
+    // ASCII字符分类表, 非ASCII字符则回退到Character的判断(见charClass)
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte LETTER = 3; // 包括'_'
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) CHAR_CLASS[c] = SPACE;
+        }
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = LETTER;
+        CHAR_CLASS['_'] = LETTER;
+    }
+
+    private static byte charClass(char c) {
+        if (c < 128) return CHAR_CLASS[c];
+        if (Character.isWhitespace(c)) return SPACE;
+        if (Character.isLetter(c)) return LETTER;
+        if (Character.isDigit(c)) return DIGIT;
+        return OTHER;
+    }
+
+    // 源代码不短于此长度时才分块并行分析
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    // 每块至少的长度
+    private static final int MIN_CHUNK_SIZE = 1 << 18;
+    // 每块顺序分析时至多尝试对齐的次数, 超过后该块余下的部分都顺序分析
+    private static final int MAX_RESYNC_ATTEMPTS = 64;
+
+    private char[] source = null;
     private int sourceLength = 0;
     private int curPos = -1;
     private int curLine = 1;
+    private TokenBuffer tokens = null;
 
     public void setSource(String source) {
+        setSource(source.toCharArray());
+    }
+
+    /**
+     * 直接以字符数组作为源代码, 扫描时不再复制
+     */
+    public void setSource(char[] source) {
+        // 按平均每4个字符一个token预估容量, 减少扩容次数
+        setSource(source, source.length / 4);
+    }
+
+    private void setSource(char[] source, int tokenCapacity) {
         this.source = source;
-        this.sourceLength = source.length();
+        this.sourceLength = source.length;
+        this.curPos = -1;
+        this.curLine = 1;
+        // 每个源文件的标识符单独编号
+        this.tokens = new TokenBuffer(source, tokenCapacity, new IdentPool());
     }
 
-    public List<Token> getTokens() {
+    public TokenBuffer getTokens() {
         if (source == null) throw new RuntimeException("Source not set");
-        Token nextToken;
+        int nextToken;
         do {
             nextToken = next();
-        } while (nextToken != null);
+        } while (nextToken != -1);
         return tokens;
     }
 
-    public List<Token> transStr2Tokens(String source) {
+    public TokenBuffer transStr2Tokens(String source) {
+        return transChars2Tokens(source.toCharArray());
+    }
+
+    public TokenBuffer transChars2Tokens(char[] source) {
         setSource(source);
+        if (Config.PARALLEL_LEX && source.length >= PARALLEL_THRESHOLD) {
+            int chunkCount = Math.min(Runtime.getRuntime().availableProcessors(), source.length / MIN_CHUNK_SIZE);
+            if (chunkCount > 1) {
+                return lexParallel(chunkCount);
+            }
+        }
         return getTokens();
     }
 
     /**
-     * 获取下一个token并将其加入到tokens中
-     * @return 下一个token(如果没有则返回null)
+     * 将源代码在换行处分为若干块并行分析, 再依次拼接为与顺序分析完全相同的token序列
+     * 各块推测自己的开头处于token之间, 但开头也可能落在块注释或字符串常量中, 此时推测的结果从某处起才与顺序分析一致:
+     * 从一个token的起始位置往后的分析结果只取决于位置, 因此顺序分析的下一个token若也出现在推测的结果中, 此后的部分即可直接采用,
+     * 只是行号相差一个固定的偏移; 找不到这样的token时就从该处顺序分析, 直到与推测的结果重新对齐
      */
-    public Token next() {
-        char c;
-        // 自动往下一个字符移动一位并将空白字符跳过
-        do {
-            if (curPos + 1 >= sourceLength) return null;
-            c = source.charAt(++curPos);
-            if (c == '\n') curLine++;
-        } while (Character.isWhitespace(c));
-        char nextC = curPos + 1 < sourceLength ? source.charAt(curPos + 1) : '\0';
-        // 标识符或保留字
-        if (Character.isLetter(c) || c == '_') {
-            String s = "";
-            for (int j = curPos; j < sourceLength; j++) {
-                char d = source.charAt(j);
-                if (d == '_' || Character.isLetter(d) || Character.isDigit(d)) s += d;
-                else {
-                    curPos = j - 1;
-                    break;
+    private TokenBuffer lexParallel(int chunkCount) {
+        Chunk[] chunks = splitChunks(chunkCount);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(ForkJoinTask.adapt(chunk::lex));
+        }
+        try {
+            ForkJoinTask.invokeAll(tasks);
+        } catch (RuntimeException e) {
+            // 推测的分析可能在注释中遇到过大的数字等, 此时改为顺序分析, 真正的错误由顺序分析抛出
+            setSource(source);
+            return getTokens();
+        }
+        // 顺序分析的下一个token的起始位置和行号, 以及它是否已经由顺序分析加入tokens
+        int nextOffset = 0, nextLine = 1;
+        boolean nextAdded = false;
+        for (Chunk chunk : chunks) {
+            TokenBuffer guess = chunk.tokens;
+            int k, delta = 0;
+            if (chunk.start == 0) {
+                // 第一块的推测一定正确
+                k = 0;
+                delta = 0;
+            } else if (nextOffset >= chunk.end) {
+                // 上一个token之后的注释跨过了整块
+                continue;
+            } else if ((k = chunk.find(nextOffset)) >= 0) {
+                delta = nextLine - guess.getLine(k);
+                if (nextAdded) {
+                    k++;
+                }
+            } else {
+                // 顺序分析直到与推测的结果对齐, 得到的token直接加入tokens
+                if (!nextAdded) {
+                    curPos = nextOffset - 1;
+                    curLine = nextLine;
+                }
+                int attempts = 0;
+                while (true) {
+                    int index = next();
+                    if (index == -1) {
+                        return tokens;
+                    }
+                    int offset = tokens.getOffset(index);
+                    if (offset >= chunk.end) {
+                        nextOffset = offset;
+                        nextLine = tokens.getLine(index);
+                        nextAdded = true;
+                        break;
+                    }
+                    if (attempts++ < MAX_RESYNC_ATTEMPTS && (k = chunk.find(offset)) >= 0) {
+                        delta = tokens.getLine(index) - guess.getLine(k);
+                        k++;
+                        break;
+                    }
+                }
+                if (k < 0) {
+                    continue;
                 }
             }
-            Token token = new Token(reserveWords.getOrDefault(s, TokenType.IDENFR), s, curLine);
-            tokens.add(token);
-            return token;
-        }
-        // 无符号整数
-        else if (Character.isDigit(c)) {
-            String s = "";
-            for (int j = curPos; j < sourceLength; j++) {
-                char d = source.charAt(j);
-                if (Character.isDigit(d)) s += d;
-                else {
-                    curPos = j - 1;
+            // 采用推测的结果, 块外的第一个token留给下一块
+            for (; k < guess.size(); k++) {
+                int offset = guess.getOffset(k);
+                int line = guess.getLine(k) + delta;
+                if (offset >= chunk.end) {
+                    nextOffset = offset;
+                    nextLine = line;
+                    nextAdded = false;
                     break;
                 }
+                tokens.add(guess.getType(k), offset, guess.getLength(k), line, chunk.globalIdent(k, tokens.getIdentPool()));
+            }
+            if (k == guess.size()) {
+                // 推测的分析在块内结束(源代码结束或遇到非法字符), 顺序分析也在此结束
+                break;
             }
-            Token token = new Token(TokenType.INTCON, Integer.parseInt(s), curLine);
-            tokens.add(token);
-            return token;
         }
-        // 字符串常量
-        else if (c == '\"') {
-            String s = "\"";
-            for (int j = curPos + 1; j < sourceLength; j++) {
-                char d = source.charAt(j);
-                if (d != '\"') {
-                    s += d;
-                } else {
-                    curPos = j;
-                    s += "\"";
-                    break;
-                }
+        return tokens;
+    }
+
+    /**
+     * 在换行处将源代码分为至多chunkCount块
+     */
+    private Chunk[] splitChunks(int chunkCount) {
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= chunkCount && start < sourceLength; i++) {
+            int end = i == chunkCount ? sourceLength : (int) ((long) sourceLength * i / chunkCount);
+            end = Math.max(end, start);
+            while (end < sourceLength && source[end - 1] != '\n') end++;
+            chunks.add(new Chunk(source, start, end));
+            start = end;
+        }
+        return chunks.toArray(new Chunk[0]);
+    }
+
+    public TokenStream transStr2Stream(String source) {
+        return transChars2Stream(source.toCharArray());
+    }
+
+    /**
+     * 以流式方式提供token, 由Parser按需拉取, 只在一个小的环形缓冲区中保留当前的前瞻窗口
+     */
+    public TokenStream transChars2Stream(char[] source) {
+        setSource(source, 64);
+        return new LexerStream(this, tokens);
+    }
+
+    /**
+     * 并行分析时的一块源代码[start, end)
+     * 推测开头处于token之间, 分析出起始位置在块内的所有token, 以及块外的第一个token(如果有)
+     * 标识符先在块自己的IdentPool中编号, 拼接时再按出现顺序换为全局的编号
+     */
+    private static class Chunk {
+        private final char[] source;
+        private final int start;
+        private final int end;
+        private TokenBuffer tokens;
+        private int[] identMap;
+        // find的查找位置, 拼接时查找的offset只增不减, 因此只需向后移动
+        private int cursor = 0;
+
+        private Chunk(char[] source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        private void lex() {
+            Lexer lexer = new Lexer();
+            lexer.source = source;
+            lexer.sourceLength = source.length;
+            lexer.curPos = start - 1;
+            lexer.tokens = new TokenBuffer(source, (end - start) / 4, new IdentPool());
+            int index;
+            do {
+                index = lexer.next();
+            } while (index != -1 && lexer.tokens.getOffset(index) < end);
+            tokens = lexer.tokens;
+            identMap = new int[tokens.getIdentPool().size()];
+            Arrays.fill(identMap, -1);
+        }
+
+        /**
+         * 查找起始位置为offset的token, 各次调用的offset必须递增
+         * @return token的下标, 没有则为-1
+         */
+        private int find(int offset) {
+            while (cursor < tokens.size() && tokens.getOffset(cursor) < offset) {
+                cursor++;
             }
-            Token token = new Token(TokenType.STRCON, s, curLine);
-            tokens.add(token);
-            return token;
-        }
-        // /或注释, 在此就将注释完全跳过, 并返回有意义的下一个token
-        else if (c == '/') {
-            if (nextC == '/') {
-                int j = source.indexOf('\n', curPos + 2);
-                if (j != -1) curPos = j - 1;
-                else curPos = sourceLength - 1;
-                return next();
-            } else if (nextC == '*') {
-                for (int j = curPos + 2; j < sourceLength; j++) {
-                    char e = source.charAt(j);
-                    if (e == '\n') curLine++;
-                    else if (e == '*' && source.charAt(j + 1) == '/') {
-                        curPos = j + 1;
-                        break;
+            return cursor < tokens.size() && tokens.getOffset(cursor) == offset ? cursor : -1;
+        }
+
+        private int globalIdent(int k, IdentPool pool) {
+            int ident = tokens.getIdent(k);
+            if (ident < 0) {
+                return -1;
+            }
+            if (identMap[ident] < 0) {
+                identMap[ident] = pool.intern(source, tokens.getOffset(k), tokens.getLength(k));
+            }
+            return identMap[ident];
+        }
+    }
+
+    /**
+     * 获取下一个token并将其加入到tokens中
+     * token只以(类型, 起始下标, 长度, 行号)的形式记录, 其值在需要时才由TokenBuffer解码
+     * @return 下一个token在tokens中的下标(如果没有则返回-1)
+     */
+    public int next() {
+        final char[] source = this.source;
+        final int sourceLength = this.sourceLength;
+        int pos = curPos;
+        char c;
+        while (true) {
+            // 自动往下一个字符移动一位并将空白字符跳过
+            do {
+                if (pos + 1 >= sourceLength) {
+                    curPos = pos;
+                    return -1;
+                }
+                c = source[++pos];
+                if (c == '\n') curLine++;
+            } while (charClass(c) == SPACE);
+            // 注释直接跳过, 继续寻找下一个有意义的token
+            if (c == '/' && pos + 1 < sourceLength) {
+                char nextC = source[pos + 1];
+                if (nextC == '/') {
+                    int j = pos + 2;
+                    while (j < sourceLength && source[j] != '\n') j++;
+                    pos = j - 1;
+                    continue;
+                } else if (nextC == '*') {
+                    int j = pos + 2;
+                    while (j < sourceLength) {
+                        char e = source[j];
+                        if (e == '\n') curLine++;
+                        else if (e == '*' && j + 1 < sourceLength && source[j + 1] == '/') break;
+                        j++;
                     }
+                    // 未闭合的块注释一直延伸到文件末尾
+                    pos = Math.min(j + 1, sourceLength - 1);
+                    continue;
                 }
-                return next();
-            } else {
-                Token token = new Token(TokenType.DIV, "/", curLine);
-                tokens.add(token);
-                return token;
             }
+            break;
+        }
+        TokenType type;
+        int start = pos;
+        int ident = -1;
+        byte cls = charClass(c);
+        // 标识符或保留字
+        if (cls == LETTER) {
+            int end = pos + 1;
+            while (end < sourceLength && charClass(source[end]) >= DIGIT) end++;
+            type = reserveWord(source, pos, end - pos);
+            if (type == TokenType.IDENFR) {
+                ident = tokens.getIdentPool().intern(source, pos, end - pos);
+            }
+            pos = end - 1;
+        }
+        // 无符号整数, 在此检查是否溢出, 数值本身由TokenBuffer按需解码
+        else if (cls == DIGIT) {
+            int end = pos;
+            long value = 0;
+            while (end < sourceLength) {
+                char d = source[end];
+                if (d >= '0' && d <= '9') value = value * 10 + (d - '0');
+                else if (d >= 128 && Character.isDigit(d)) value = value * 10 + Character.digit(d, 10);
+                else break;
+                if (value > Integer.MAX_VALUE) {
+                    throw new NumberFormatException("For input string: \"" + new String(source, pos, end + 1 - pos) + "\"");
+                }
+                end++;
+            }
+            type = TokenType.INTCON;
+            pos = end - 1;
+        }
+        // 字符串常量
+        else if (c == '\"') {
+            int end = pos + 1;
+            while (end < sourceLength && source[end] != '\"') end++;
+            // 未闭合的字符串常量一直延伸到文件末尾
+            end = Math.min(end + 1, sourceLength);
+            type = TokenType.STRCON;
+            pos = end - 1;
         }
         // 简单符号
-        else if (simpleTokens.containsKey(String.valueOf(c)) || simpleTokens.containsKey(String.valueOf(c) + nextC)) {
-            String s = String.valueOf(c);
-            if (simpleTokens.containsKey(s + nextC)) {
-                s += nextC;
-                curPos++;
+        else {
+            char nextC = pos + 1 < sourceLength ? source[pos + 1] : '\0';
+            type = simpleToken(c, nextC);
+            if (type == null) {
+                curPos = pos;
+                return -1;
+            }
+            if (isDoubleCharToken(type)) {
+                pos++;
             }
-            Token token = new Token(simpleTokens.get(s), s, curLine);
-            tokens.add(token);
-            return token;
         }
-        return null;
+        curPos = pos;
+        return tokens.add(type, start, pos - start + 1, curLine, ident);
     }
 }
@@ -0,0 +1,105 @@
+package frontend;
+
+import token.IdentPool;
+import token.Token;
+import token.TokenBuffer;
+import token.TokenStream;
+import token.TokenType;
+
+/**
+ * 流式的token序列: Parser访问到哪里, Lexer才分析到哪里
+ * token存放在一个小的环形TokenBuffer中, 被Parser越过的token随即被释放, 因此完整的token序列不会被物化
+ */
+class LexerStream implements TokenStream {
+    private final Lexer lexer;
+    private final TokenBuffer buffer;
+    private boolean exhausted = false;
+
+    LexerStream(Lexer lexer, TokenBuffer buffer) {
+        this.lexer = lexer;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 从Lexer拉取token, 直到下标处的token可用或源代码分析完毕
+     */
+    private void fill(int index) {
+        while (!exhausted && buffer.size() <= index) {
+            exhausted = lexer.next() == -1;
+        }
+    }
+
+    @Override
+    public boolean has(int index) {
+        fill(index);
+        return buffer.has(index);
+    }
+
+    @Override
+    public TokenType getType(int index) {
+        fill(index);
+        return buffer.getType(index);
+    }
+
+    @Override
+    public int getLine(int index) {
+        fill(index);
+        return buffer.getLine(index);
+    }
+
+    @Override
+    public String getValue(int index) {
+        fill(index);
+        return buffer.getValue(index);
+    }
+
+    @Override
+    public int getNumValue(int index) {
+        fill(index);
+        return buffer.getNumValue(index);
+    }
+
+    @Override
+    public int getIdent(int index) {
+        fill(index);
+        return buffer.getIdent(index);
+    }
+
+    @Override
+    public int getOffset(int index) {
+        fill(index);
+        return buffer.getOffset(index);
+    }
+
+    @Override
+    public int getLength(int index) {
+        fill(index);
+        return buffer.getLength(index);
+    }
+
+    @Override
+    public char[] getSource() {
+        return buffer.getSource();
+    }
+
+    @Override
+    public IdentPool getIdentPool() {
+        return buffer.getIdentPool();
+    }
+
+    @Override
+    public Token get(int index) {
+        fill(index);
+        return buffer.get(index);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public void release(int index) {
+        buffer.release(index);
+    }
+}
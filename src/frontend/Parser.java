@@ -9,15 +9,19 @@ import error.*;
 import error.Error;
 import node.*;
 import token.*;
+import utils.IntStack;
 
 import java.util.*;
 
 public class Parser {
-    private static Parser instance = null;
-    private List<Token> tokens;
+    private TokenStream tokens;
     private int nowTokenIndex = 0;
+    private SyntaxTree tree;
     private VNode compUnitNode;
-    private final ErrorHandler errorHandler = ErrorHandler.getInstance();
+    private final ErrorHandler errorHandler;
+    // BinaryExp中未结束的一元运算符和括号
+    private static final int UNARY_FRAME = 0;
+    private static final int PAREN_FRAME = 1;
     private final Map<NodeType, Set<TokenType>> FIRST = new HashMap<>() {{
         put(NodeType.FuncRParams, new HashSet<>() {{
             add(TokenType.LPARENT);
@@ -29,19 +33,14 @@ public class Parser {
         }});
     }};
 
-    private Parser() {
+    public Parser(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
     }
 
-    public static Parser getInstance() {
-        if (instance == null) {
-            instance = new Parser();
-        }
-        return instance;
-    }
-
-    public VNode transTokens2VNode(List<Token> tokens) {
+    public VNode transTokens2VNode(TokenStream tokens) {
         this.tokens = tokens;
         this.nowTokenIndex = 0;
+        this.tree = null;
         this.compUnitNode = null;
         return getCompUnitNode();
     }
@@ -57,299 +56,309 @@ public class Parser {
         if (tokens == null) {
             throw new RuntimeException("token list is empty");
         }
-        this.compUnitNode = CompUnit();
+        char[] source = tokens.getSource();
+        // 按平均每2个字符一个节点预估容量, 减少扩容次数
+        this.tree = new SyntaxTree(tokens, source.length / 2);
+        CompUnit();
+        this.compUnitNode = tree.getRoot();
     }
 
-    public void setTokens(List<Token> tokens) {
+    public void setTokens(TokenStream tokens) {
         this.tokens = tokens;
     }
 
-    private Token now() {
-        return tokens.get(nowTokenIndex);
+    private TokenType nowType() {
+        return tokens.getType(nowTokenIndex);
     }
 
-    private Token last() {
-        return tokens.get(nowTokenIndex - 1);
+    private int lastLine() {
+        return tokens.getLine(nowTokenIndex - 1);
     }
 
-    private Token next(int i) {
-        return tokens.get(nowTokenIndex + i);
+    private TokenType nextType(int i) {
+        return tokens.getType(nowTokenIndex + i);
     }
 
-    private Token expect(TokenType type) {
-        if (now().getType() != type) {
-            throw new RuntimeException("Expect " + type + " but got " + now().getType() + "\n" + "token info: " + now().toDebugString());
+    /**
+     * 匹配当前token并前进一位
+     * @return 被匹配的token在tokens中的下标
+     */
+    private int expect(TokenType type) {
+        if (nowType() != type) {
+            throw new RuntimeException("Expect " + type + " but got " + nowType() + "\n" + "token info: " + tokens.get(nowTokenIndex).toDebugString());
         }
-        Token token = now();
-        if (this.nowTokenIndex + 1 < tokens.size()) {
+        int token = nowTokenIndex;
+        if (tokens.has(this.nowTokenIndex + 1)) {
             ++this.nowTokenIndex;
+            // 此后最多只会回看上一个token, 完整的token序列则由语法树直接引用, 不能释放
+            if (tokens.isStreaming()) {
+                tokens.release(this.nowTokenIndex - 1);
+            }
         }
         return token;
     }
 
-    private VNode CompUnit() {
+    private int CompUnit() {
         // CompUnit -> {Decl} {FuncDef} MainFuncDef
-        List<VNode> childrenNodes = new ArrayList<>();
-        while (next(1).getType() != TokenType.MAINTK && next(2).getType() != TokenType.LPARENT) {
-            VNode declNode = Decl();
-            childrenNodes.add(declNode);
+        int mark = tree.mark();
+        while (nextType(1) != TokenType.MAINTK && nextType(2) != TokenType.LPARENT) {
+            Decl();
         }
-        while (next(1).getType() != TokenType.MAINTK) {
-            VNode funcDefNode = FuncDef();
-            childrenNodes.add(funcDefNode);
+        while (nextType(1) != TokenType.MAINTK) {
+            FuncDef();
         }
-        VNode mainFuncDefNode = MainFuncDef();
-        childrenNodes.add(mainFuncDefNode);
-        return new VNode(childrenNodes, NodeType.CompUnit);
+        MainFuncDef();
+        return tree.finish(NodeType.CompUnit, mark);
     }
 
-    private VNode Decl() {
+    private int Decl() {
         // Decl -> ConstDecl | VarDecl
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (now().getType() == TokenType.CONSTTK) {
-            childrenNodes.add(ConstDecl());
+        int mark = tree.mark();
+        if (nowType() == TokenType.CONSTTK) {
+            ConstDecl();
         } else {
-            childrenNodes.add(VarDecl());
+            VarDecl();
         }
-        return new VNode(childrenNodes, NodeType.Decl);
+        return tree.finish(NodeType.Decl, mark);
     }
 
-    private VNode ConstDecl() {
+    private int ConstDecl() {
         // ConstDecl -> 'const' BType ConstDef { ',' ConstDef } ';'
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(new VNode(expect(TokenType.CONSTTK)));
-        childrenNodes.add(BType());
-        childrenNodes.add(ConstDef());
-        while (now().getType() == TokenType.COMMA) {
-            childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-            childrenNodes.add(ConstDef());
+        int mark = tree.mark();
+        tree.leaf(tokens, expect(TokenType.CONSTTK));
+        BType();
+        ConstDef();
+        while (nowType() == TokenType.COMMA) {
+            tree.leaf(tokens, expect(TokenType.COMMA));
+            ConstDef();
         }
-        handleSEMICNError(childrenNodes);
-        return new VNode(childrenNodes, NodeType.ConstDecl);
+        handleSEMICNError();
+        return tree.finish(NodeType.ConstDecl, mark);
     }
 
-    private void handleSEMICNError(List<VNode> childrenNodes) {
+    private void handleSEMICNError() {
         try {
-            childrenNodes.add(new VNode(expect(TokenType.SEMICN)));
+            tree.leaf(tokens, expect(TokenType.SEMICN));
         } catch (RuntimeException e) {
             if (Config.ERROR) {
-                errorHandler.addError(new Error(ErrorType.i, last().getLine()));
+                errorHandler.addError(new Error(ErrorType.i, lastLine()));
             }
             if (Config.DEBUG) {
-                System.out.printf("in line %d: '%s' should be followed by ';'%n", last().getLine(), last().getValue());
+                System.out.printf("in line %d: '%s' should be followed by ';'%n", lastLine(), tokens.getValue(nowTokenIndex - 1));
             }
         }
     }
 
-    private VNode BType() {
+    private int BType() {
         // BType -> 'int'
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(new VNode(expect(TokenType.INTTK)));
-        return new VNode(childrenNodes, NodeType.BType);
+        int mark = tree.mark();
+        tree.leaf(tokens, expect(TokenType.INTTK));
+        return tree.finish(NodeType.BType, mark);
     }
 
-    private VNode ConstDef() {
+    private int ConstDef() {
         // ConstDef -> Ident { '[' ConstExp ']' } '=' ConstInitVal
-        List<VNode> childrenNodes = new ArrayList<>();
-        Token idenfrToken = expect(TokenType.IDENFR);
-        childrenNodes.add(new VNode(idenfrToken));
-        while (now().getType() == TokenType.LBRACK) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACK)));
-            childrenNodes.add(ConstExp());
-            handleRBRACKError(childrenNodes);
+        int mark = tree.mark();
+        int idenfrToken = expect(TokenType.IDENFR);
+        tree.leaf(tokens, idenfrToken);
+        while (nowType() == TokenType.LBRACK) {
+            tree.leaf(tokens, expect(TokenType.LBRACK));
+            ConstExp();
+            handleRBRACKError();
         }
-        childrenNodes.add(new VNode(expect(TokenType.ASSIGN)));
-        childrenNodes.add(ConstInitVal());
-        return new VNode(childrenNodes, NodeType.ConstDef);
+        tree.leaf(tokens, expect(TokenType.ASSIGN));
+        ConstInitVal();
+        return tree.finish(NodeType.ConstDef, mark);
     }
 
-    private VNode ConstInitVal() {
+    private int ConstInitVal() {
         // ConstInitVal -> ConstExp | '{' [ ConstInitVal { ',' ConstInitVal } ] '}'
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (now().getType() == TokenType.LBRACE) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACE)));
-            if (now().getType() != TokenType.RBRACE) {
-                childrenNodes.add(ConstInitVal());
-                while (now().getType() == TokenType.COMMA) {
-                    childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-                    childrenNodes.add(ConstInitVal());
+        int mark = tree.mark();
+        if (nowType() == TokenType.LBRACE) {
+            tree.leaf(tokens, expect(TokenType.LBRACE));
+            if (nowType() != TokenType.RBRACE) {
+                ConstInitVal();
+                while (nowType() == TokenType.COMMA) {
+                    tree.leaf(tokens, expect(TokenType.COMMA));
+                    ConstInitVal();
                 }
             }
-            childrenNodes.add(new VNode(expect(TokenType.RBRACE)));
+            tree.leaf(tokens, expect(TokenType.RBRACE));
         } else {
-            childrenNodes.add(ConstExp());
+            ConstExp();
         }
-        return new VNode(childrenNodes, NodeType.ConstInitVal);
+        return tree.finish(NodeType.ConstInitVal, mark);
     }
 
-    private VNode VarDecl() {
+    private int VarDecl() {
         // VarDecl -> BType VarDef { ',' VarDef } ';'
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(BType());
-        childrenNodes.add(VarDef());
-        while (now().getType() == TokenType.COMMA) {
-            childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-            childrenNodes.add(VarDef());
+        int mark = tree.mark();
+        BType();
+        VarDef();
+        while (nowType() == TokenType.COMMA) {
+            tree.leaf(tokens, expect(TokenType.COMMA));
+            VarDef();
         }
-        handleSEMICNError(childrenNodes);
-        return new VNode(childrenNodes, NodeType.VarDecl);
+        handleSEMICNError();
+        return tree.finish(NodeType.VarDecl, mark);
     }
 
-    private VNode VarDef() {
+    private int VarDef() {
         // VarDef → Ident { '[' ConstExp ']' } | Ident { '[' ConstExp ']' } '=' InitVal
-        List<VNode> childrenNodes = new ArrayList<>();
-        Token idenfrToken = expect(TokenType.IDENFR);
-        childrenNodes.add(new VNode(idenfrToken));
-        while (now().getType() == TokenType.LBRACK) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACK)));
-            childrenNodes.add(ConstExp());
-            handleRBRACKError(childrenNodes);
+        int mark = tree.mark();
+        int idenfrToken = expect(TokenType.IDENFR);
+        tree.leaf(tokens, idenfrToken);
+        while (nowType() == TokenType.LBRACK) {
+            tree.leaf(tokens, expect(TokenType.LBRACK));
+            ConstExp();
+            handleRBRACKError();
         }
-        if (now().getType() == TokenType.ASSIGN) {
-            childrenNodes.add(new VNode(expect(TokenType.ASSIGN)));
-            childrenNodes.add(InitVal());
+        if (nowType() == TokenType.ASSIGN) {
+            tree.leaf(tokens, expect(TokenType.ASSIGN));
+            InitVal();
         }
-        return new VNode(childrenNodes, NodeType.VarDef);
+        return tree.finish(NodeType.VarDef, mark);
     }
 
-    private VNode InitVal() {
+    private int InitVal() {
         // InitVal → Exp | '{' [ InitVal { ',' InitVal } ] '}'
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (now().getType() == TokenType.LBRACE) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACE)));
-            if (now().getType() != TokenType.RBRACE) {
-                childrenNodes.add(InitVal());
-                while (now().getType() == TokenType.COMMA) {
-                    childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-                    childrenNodes.add(InitVal());
+        int mark = tree.mark();
+        if (nowType() == TokenType.LBRACE) {
+            tree.leaf(tokens, expect(TokenType.LBRACE));
+            if (nowType() != TokenType.RBRACE) {
+                InitVal();
+                while (nowType() == TokenType.COMMA) {
+                    tree.leaf(tokens, expect(TokenType.COMMA));
+                    InitVal();
                 }
             }
-            childrenNodes.add(new VNode(expect(TokenType.RBRACE)));
+            tree.leaf(tokens, expect(TokenType.RBRACE));
         } else {
-            childrenNodes.add(Exp());
+            Exp();
         }
-        return new VNode(childrenNodes, NodeType.InitVal);
+        return tree.finish(NodeType.InitVal, mark);
     }
 
-    private VNode FuncDef() {
+    private int FuncDef() {
         // FuncDef → FuncType Ident '(' [FuncFParams] ')' Block
         // Fi(FuncFParams) = Fi(BType) = { 'int' }
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(FuncType());
-        Token idenfrToken = expect(TokenType.IDENFR);
-        childrenNodes.add(new VNode(idenfrToken));
-        childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-        if (now().getType() == TokenType.INTTK) {
-            childrenNodes.add(FuncFParams());
+        int mark = tree.mark();
+        FuncType();
+        int idenfrToken = expect(TokenType.IDENFR);
+        tree.leaf(tokens, idenfrToken);
+        tree.leaf(tokens, expect(TokenType.LPARENT));
+        if (nowType() == TokenType.INTTK) {
+            FuncFParams();
         }
-        handlePRARENTError(childrenNodes);
-        childrenNodes.add(Block());
-        return new VNode(childrenNodes, NodeType.FuncDef);
+        handlePRARENTError();
+        Block();
+        return tree.finish(NodeType.FuncDef, mark);
     }
 
-    private void handlePRARENTError(List<VNode> childrenNodes) {
+    private void handlePRARENTError() {
         try {
-            childrenNodes.add(new VNode(expect(TokenType.RPARENT)));
+            tree.leaf(tokens, expect(TokenType.RPARENT));
         } catch (RuntimeException e) {
             if (Config.ERROR) {
-                errorHandler.addError(new Error(ErrorType.j, last().getLine()));
+                errorHandler.addError(new Error(ErrorType.j, lastLine()));
             }
             if (Config.DEBUG) {
-                System.out.printf("in line %d: missing ')' after '%s'%n", last().getLine(), last().getValue());
+                System.out.printf("in line %d: missing ')' after '%s'%n", lastLine(), tokens.getValue(nowTokenIndex - 1));
             }
         }
     }
 
-    private VNode MainFuncDef() {
+    private int MainFuncDef() {
         // MainFuncDef → 'int' 'main' '(' ')' Block
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(new VNode(expect(TokenType.INTTK)));
-        childrenNodes.add(new VNode(expect(TokenType.MAINTK)));
-        childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-        handlePRARENTError(childrenNodes);
-        childrenNodes.add(Block());
-        return new VNode(childrenNodes, NodeType.MainFuncDef);
+        int mark = tree.mark();
+        tree.leaf(tokens, expect(TokenType.INTTK));
+        tree.leaf(tokens, expect(TokenType.MAINTK));
+        tree.leaf(tokens, expect(TokenType.LPARENT));
+        handlePRARENTError();
+        Block();
+        return tree.finish(NodeType.MainFuncDef, mark);
     }
 
-    private VNode FuncType() {
+    private int FuncType() {
         // FuncType → 'void' | 'int'
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (now().getType() == TokenType.VOIDTK) {
-            childrenNodes.add(new VNode(expect(TokenType.VOIDTK)));
-        } else if (now().getType() == TokenType.INTTK) {
-            childrenNodes.add(new VNode(expect(TokenType.INTTK)));
+        int mark = tree.mark();
+        if (nowType() == TokenType.VOIDTK) {
+            tree.leaf(tokens, expect(TokenType.VOIDTK));
+        } else if (nowType() == TokenType.INTTK) {
+            tree.leaf(tokens, expect(TokenType.INTTK));
         }
-        return new VNode(childrenNodes, NodeType.FuncType);
+        return tree.finish(NodeType.FuncType, mark);
     }
 
-    private VNode FuncFParams() {
+    private int FuncFParams() {
         // FuncFParams → FuncFParam { ',' FuncFParam }
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(FuncFParam());
-        while (now().getType() == TokenType.COMMA) {
-            childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-            childrenNodes.add(FuncFParam());
+        int mark = tree.mark();
+        FuncFParam();
+        while (nowType() == TokenType.COMMA) {
+            tree.leaf(tokens, expect(TokenType.COMMA));
+            FuncFParam();
         }
-        return new VNode(childrenNodes, NodeType.FuncFParams);
+        return tree.finish(NodeType.FuncFParams, mark);
     }
 
-    private VNode FuncFParam() {
+    private int FuncFParam() {
         // FuncFParam → BType Ident ['[' ']' { '[' ConstExp ']' }]
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(BType());
-        Token idenfrToken = expect(TokenType.IDENFR);
-        childrenNodes.add(new VNode(idenfrToken));
-        if (now().getType() == TokenType.LBRACK) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACK)));
-            handleRBRACKError(childrenNodes);
-            while (now().getType() == TokenType.LBRACK) {
-                childrenNodes.add(new VNode(expect(TokenType.LBRACK)));
-                childrenNodes.add(ConstExp());
-                handleRBRACKError(childrenNodes);
+        int mark = tree.mark();
+        BType();
+        int idenfrToken = expect(TokenType.IDENFR);
+        tree.leaf(tokens, idenfrToken);
+        if (nowType() == TokenType.LBRACK) {
+            tree.leaf(tokens, expect(TokenType.LBRACK));
+            handleRBRACKError();
+            while (nowType() == TokenType.LBRACK) {
+                tree.leaf(tokens, expect(TokenType.LBRACK));
+                ConstExp();
+                handleRBRACKError();
             }
         }
-        return new VNode(childrenNodes, NodeType.FuncFParam);
+        return tree.finish(NodeType.FuncFParam, mark);
     }
 
-    private void handleRBRACKError(List<VNode> childrenNodes) {
+    private void handleRBRACKError() {
         try {
-            childrenNodes.add(new VNode(expect(TokenType.RBRACK)));
+            tree.leaf(tokens, expect(TokenType.RBRACK));
         } catch (RuntimeException e) {
             if (Config.ERROR) {
-                errorHandler.addError(new Error(ErrorType.k, last().getLine()));
+                errorHandler.addError(new Error(ErrorType.k, lastLine()));
             }
             if (Config.DEBUG) {
-                System.out.printf("in line %d: missing ']' after '%s'%n", last().getLine(), last().getValue());
+                System.out.printf("in line %d: missing ']' after '%s'%n", lastLine(), tokens.getValue(nowTokenIndex - 1));
             }
         }
     }
 
-    private VNode Block() {
+    private int Block() {
         // Block → '{' { BlockItem } '}'
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(new VNode(expect(TokenType.LBRACE)));
-        while (now().getType() != TokenType.RBRACE) {
-            childrenNodes.add(BlockItem());
+        int mark = tree.mark();
+        tree.leaf(tokens, expect(TokenType.LBRACE));
+        while (nowType() != TokenType.RBRACE) {
+            BlockItem();
         }
-        childrenNodes.add(new VNode(expect(TokenType.RBRACE)));
-        return new VNode(childrenNodes, NodeType.Block);
+        tree.leaf(tokens, expect(TokenType.RBRACE));
+        return tree.finish(NodeType.Block, mark);
     }
 
-    private VNode BlockItem() {
+    private int BlockItem() {
         // BlockItem → Decl | Stmt
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (now().getType() == TokenType.CONSTTK || now().getType() == TokenType.INTTK) {
-            childrenNodes.add(Decl());
+        int mark = tree.mark();
+        if (nowType() == TokenType.CONSTTK || nowType() == TokenType.INTTK) {
+            Decl();
         } else {
-            childrenNodes.add(Stmt());
+            Stmt();
         }
-        return new VNode(childrenNodes, NodeType.BlockItem);
+        return tree.finish(NodeType.BlockItem, mark);
     }
 
     private boolean hasAssignInLine() {
         int i = this.nowTokenIndex;
-        while (i < tokens.size() && tokens.get(i).getLine() == now().getLine()) {
-            if (tokens.get(i).getType() == TokenType.ASSIGN) {
+        int line = tokens.getLine(nowTokenIndex);
+        while (tokens.has(i) && tokens.getLine(i) == line) {
+            if (tokens.getType(i) == TokenType.ASSIGN) {
                 return true;
             }
             ++i;
@@ -357,7 +366,7 @@ public class Parser {
         return false;
     }
 
-    private VNode Stmt() {
+    private int Stmt() {
         /*
          * Stmt -> LVal '=' Exp ';'
          * | [Exp] ';'
@@ -372,331 +381,371 @@ public class Parser {
          * Fi(Exp) = {'+', '-', '!', '(', IDENFR, INTCON}
          * Fi(LVal) = {IDENFR}
          */
-        List<VNode> childrenNodes = new ArrayList<>();
-        switch (now().getType()) {
+        int mark = tree.mark();
+        switch (nowType()) {
             case LBRACE -> {
                 // Block
-                childrenNodes.add(Block());
+                Block();
             }
             case IFTK -> {
                 // 'if' '(' Cond ')' Stmt [ 'else' Stmt ]
-                childrenNodes.add(new VNode(expect(TokenType.IFTK)));
-                childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-                childrenNodes.add(Cond());
-                handlePRARENTError(childrenNodes);
-                childrenNodes.add(Stmt());
-                if (now().getType() == TokenType.ELSETK) {
-                    childrenNodes.add(new VNode(expect(TokenType.ELSETK)));
-                    childrenNodes.add(Stmt());
+                // 内嵌的if语句(无论是if分支还是else分支)都展开为循环, 不递归调用Stmt
+                // nestedMarks记录尚未归约的各层内嵌if语句的Stmt, inElse记录它是外层的else分支(1)还是if分支(0)
+                IntStack nestedMarks = new IntStack();
+                IntStack inElse = new IntStack();
+                while (true) {
+                    tree.leaf(tokens, expect(TokenType.IFTK));
+                    tree.leaf(tokens, expect(TokenType.LPARENT));
+                    Cond();
+                    handlePRARENTError();
+                    if (nowType() == TokenType.IFTK) {
+                        nestedMarks.push(tree.mark());
+                        inElse.push(0);
+                        continue;
+                    }
+                    Stmt();
+                    if (!finishIfBranch(nestedMarks, inElse)) {
+                        break;
+                    }
                 }
             }
             case FORTK -> {
                 // 'for' '(' [ForStmt] ';' [Cond] ';' [forStmt] ')' Stmt
                 // Fi(ForStmt) = Fi(LVal) = { IDENFR }
-                childrenNodes.add(new VNode(expect(TokenType.FORTK)));
-                childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-                if (now().getType() != TokenType.SEMICN) {
-                    childrenNodes.add(ForStmt());
+                tree.leaf(tokens, expect(TokenType.FORTK));
+                tree.leaf(tokens, expect(TokenType.LPARENT));
+                if (nowType() != TokenType.SEMICN) {
+                    ForStmt();
                 }
-                handleSEMICNError(childrenNodes);
-                if (now().getType() != TokenType.SEMICN) {
-                    childrenNodes.add(Cond());
+                handleSEMICNError();
+                if (nowType() != TokenType.SEMICN) {
+                    Cond();
                 }
-                handleSEMICNError(childrenNodes);
-                if (now().getType() == TokenType.IDENFR) {
-                    childrenNodes.add(ForStmt());
+                handleSEMICNError();
+                if (nowType() == TokenType.IDENFR) {
+                    ForStmt();
                 }
-                handlePRARENTError(childrenNodes);
-                childrenNodes.add(Stmt());
+                handlePRARENTError();
+                Stmt();
             }
             case BREAKTK, CONTINUETK -> {
                 // 'break' ';' | 'continue' ';'
-                if (now().getType() == TokenType.BREAKTK) {
-                    childrenNodes.add(new VNode(expect(TokenType.BREAKTK)));
+                if (nowType() == TokenType.BREAKTK) {
+                    tree.leaf(tokens, expect(TokenType.BREAKTK));
                 } else {
-                    childrenNodes.add(new VNode(expect(TokenType.CONTINUETK)));
+                    tree.leaf(tokens, expect(TokenType.CONTINUETK));
                 }
-                handleSEMICNError(childrenNodes);
+                handleSEMICNError();
             }
             case RETURNTK -> {
                 // 'return' [Exp] ';'
-                childrenNodes.add(new VNode(expect(TokenType.RETURNTK)));
-                if (now().getType() != TokenType.SEMICN) {
-                    childrenNodes.add(Exp());
+                tree.leaf(tokens, expect(TokenType.RETURNTK));
+                if (nowType() != TokenType.SEMICN) {
+                    Exp();
                 }
-                handleSEMICNError(childrenNodes);
+                handleSEMICNError();
             }
             case PRINTFTK -> {
                 // 'printf' '(' FormatString { ',' Exp } ')' ';'
-                childrenNodes.add(new VNode(expect(TokenType.PRINTFTK)));
-                childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-                handleFormatStringError(childrenNodes);
-                while (now().getType() == TokenType.COMMA) {
-                    childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-                    childrenNodes.add(Exp());
+                tree.leaf(tokens, expect(TokenType.PRINTFTK));
+                tree.leaf(tokens, expect(TokenType.LPARENT));
+                handleFormatStringError();
+                while (nowType() == TokenType.COMMA) {
+                    tree.leaf(tokens, expect(TokenType.COMMA));
+                    Exp();
                 }
-                handlePRARENTError(childrenNodes);
-                handleSEMICNError(childrenNodes);
+                handlePRARENTError();
+                handleSEMICNError();
             }
             default -> {
                 if (hasAssignInLine()) {
                     // LVal '=' Exp ';' | LVal '=' 'getint' '(' ')' ';'
-                    childrenNodes.add(LVal());
-                    childrenNodes.add(new VNode(expect(TokenType.ASSIGN)));
-                    if (now().getType() == TokenType.GETINTTK) {
+                    LVal();
+                    tree.leaf(tokens, expect(TokenType.ASSIGN));
+                    if (nowType() == TokenType.GETINTTK) {
                         // LVal '=' 'getint' '(' ')' ';'
-                        childrenNodes.add(new VNode(expect(TokenType.GETINTTK)));
-                        childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-                        handlePRARENTError(childrenNodes);
-                        handleSEMICNError(childrenNodes);
+                        tree.leaf(tokens, expect(TokenType.GETINTTK));
+                        tree.leaf(tokens, expect(TokenType.LPARENT));
+                        handlePRARENTError();
+                        handleSEMICNError();
                     } else {
                         // LVal '=' Exp ';'
-                        childrenNodes.add(Exp());
-                        handleSEMICNError(childrenNodes);
+                        Exp();
+                        handleSEMICNError();
                     }
                 } else {
                     // [Exp] ';'
-                    if (now().getType() != TokenType.SEMICN) {
-                        childrenNodes.add(Exp());
+                    if (nowType() != TokenType.SEMICN) {
+                        Exp();
                     }
-                    handleSEMICNError(childrenNodes);
+                    handleSEMICNError();
+                }
+            }
+        }
+        return tree.finish(NodeType.Stmt, mark);
+    }
+
+    /**
+     * 最内层未完成的if语句的if分支结束后调用: 解析与它匹配的else, 并由内向外归约已经完整的内嵌if语句
+     * 作为else分支的if语句完整时, 外层的if语句也随之完整; 作为if分支时, 外层的if语句还要检查else
+     * @return 是否遇到了else if, 此时已为新的if语句记录mark, 应继续解析它; 否则最外层的if语句已完整
+     */
+    private boolean finishIfBranch(IntStack nestedMarks, IntStack inElse) {
+        while (true) {
+            if (nowType() == TokenType.ELSETK) {
+                tree.leaf(tokens, expect(TokenType.ELSETK));
+                if (nowType() == TokenType.IFTK) {
+                    nestedMarks.push(tree.mark());
+                    inElse.push(1);
+                    return true;
                 }
+                Stmt();
             }
+            while (!inElse.isEmpty() && inElse.peek() == 1) {
+                inElse.pop();
+                tree.finish(NodeType.Stmt, nestedMarks.pop());
+            }
+            if (nestedMarks.isEmpty()) {
+                return false;
+            }
+            inElse.pop();
+            tree.finish(NodeType.Stmt, nestedMarks.pop());
         }
-        return new VNode(childrenNodes, NodeType.Stmt);
     }
 
-    private VNode ForStmt() {
+    private int ForStmt() {
         // ForStmt → LVal '=' Exp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(LVal());
-        childrenNodes.add(new VNode(expect(TokenType.ASSIGN)));
-        childrenNodes.add(Exp());
-        return new VNode(childrenNodes, NodeType.ForStmt);
+        int mark = tree.mark();
+        LVal();
+        tree.leaf(tokens, expect(TokenType.ASSIGN));
+        Exp();
+        return tree.finish(NodeType.ForStmt, mark);
     }
 
-    private VNode Exp() {
+    private int Exp() {
         // Exp → AddExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(AddExp());
-        return new VNode(childrenNodes, NodeType.Exp);
+        int mark = tree.mark();
+        BinaryExp(SyntaxTree.ADD_EXP_LEVEL);
+        return tree.finish(NodeType.Exp, mark);
     }
 
-    private VNode Cond() {
+    private int Cond() {
         // Cond → LOrExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(LOrExp());
-        return new VNode(childrenNodes, NodeType.Cond);
+        int mark = tree.mark();
+        BinaryExp(SyntaxTree.LOR_EXP_LEVEL);
+        return tree.finish(NodeType.Cond, mark);
     }
 
-    private VNode LVal() {
+    private int LVal() {
         // LVal → Ident {'[' Exp ']'}
-        List<VNode> childrenNodes = new ArrayList<>();
-        Token idenfrToken = expect(TokenType.IDENFR);
-        childrenNodes.add(new VNode(idenfrToken));
-        while (now().getType() == TokenType.LBRACK) {
-            childrenNodes.add(new VNode(expect(TokenType.LBRACK)));
-            childrenNodes.add(Exp());
-            handleRBRACKError(childrenNodes);
+        int mark = tree.mark();
+        int idenfrToken = expect(TokenType.IDENFR);
+        tree.leaf(tokens, idenfrToken);
+        while (nowType() == TokenType.LBRACK) {
+            tree.leaf(tokens, expect(TokenType.LBRACK));
+            Exp();
+            handleRBRACKError();
         }
-        return new VNode(childrenNodes, NodeType.LVal);
+        return tree.finish(NodeType.LVal, mark);
     }
 
-    private VNode PrimaryExp() {
+    private int PrimaryExp() {
         // PrimaryExp → '(' Exp ')' | LVal | Number
-        List<VNode> childrenNodes = new ArrayList<>();
-        switch (now().getType()) {
-            case LPARENT -> {
-                childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-                childrenNodes.add(Exp());
-                handlePRARENTError(childrenNodes);
-            }
+        // '(' Exp ')' 由BinaryExp展开处理, 这里只分析不再嵌套的两种
+        int mark = tree.mark();
+        switch (nowType()) {
             case IDENFR -> {
-                childrenNodes.add(LVal());
+                LVal();
             }
             case INTCON -> {
-                childrenNodes.add(Number());
+                Number();
             }
         }
-        return new VNode(childrenNodes, NodeType.PrimaryExp);
+        return tree.finish(NodeType.PrimaryExp, mark);
     }
 
-    private VNode Number() {
+    private int Number() {
         // Number → IntConst
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(IntConst());
-        return new VNode(childrenNodes, NodeType.Number);
+        int mark = tree.mark();
+        IntConst();
+        return tree.finish(NodeType.Number, mark);
     }
 
     private boolean isUnaryOp(TokenType type) {
         return type == TokenType.PLUS || type == TokenType.MINU || type == TokenType.NOT;
     }
 
-    private VNode UnaryExp() {
+    private int UnaryExp() {
         // UnaryExp → PrimaryExp | Ident '(' [FuncRParams] ')' | UnaryOp UnaryExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        if (isUnaryOp(now().getType())) {
-            // UnaryOp UnaryExp
-            childrenNodes.add(UnaryOp());
-            childrenNodes.add(UnaryExp());
-        } else if (now().getType() == TokenType.IDENFR && next(1).getType() == TokenType.LPARENT) {
+        // UnaryOp UnaryExp 由BinaryExp展开处理, 这里只分析不再嵌套的操作数
+        int mark = tree.mark();
+        if (nowType() == TokenType.IDENFR && nextType(1) == TokenType.LPARENT) {
             // Ident '(' [FuncRParams] ')'
             // Fi(FuncRParams) = Fi(Exp) = Fi(AddExp) = Fi(MulExp) = Fi(UnaryExp)
             // = Fi(PrimaryExp) | Fi(UnaryOp) | Fi(Ident)
             // = { '(', IDENFR, INTCON, '+', '-', '!' }
-            Token idenfrToken = expect(TokenType.IDENFR);
-            childrenNodes.add(new VNode(idenfrToken));
-            childrenNodes.add(new VNode(expect(TokenType.LPARENT)));
-            if (FIRST.get(NodeType.FuncRParams).contains(now().getType())) {
-                childrenNodes.add(FuncRParams());
+            int idenfrToken = expect(TokenType.IDENFR);
+            tree.leaf(tokens, idenfrToken);
+            tree.leaf(tokens, expect(TokenType.LPARENT));
+            if (FIRST.get(NodeType.FuncRParams).contains(nowType())) {
+                FuncRParams();
             }
-            handlePRARENTError(childrenNodes);
+            handlePRARENTError();
         } else {
             // PrimaryExp
-            childrenNodes.add(PrimaryExp());
+            PrimaryExp();
         }
-        return new VNode(childrenNodes, NodeType.UnaryExp);
+        return tree.finish(NodeType.UnaryExp, mark);
     }
 
-    private VNode UnaryOp() {
+    private int UnaryOp() {
         // UnaryOp → '+' | '−' | '!'
-        List<VNode> childrenNodes = new ArrayList<>();
-        switch (now().getType()) {
-            case PLUS -> childrenNodes.add(new VNode(expect(TokenType.PLUS)));
-            case MINU -> childrenNodes.add(new VNode(expect(TokenType.MINU)));
-            case NOT -> childrenNodes.add(new VNode(expect(TokenType.NOT)));
+        int mark = tree.mark();
+        switch (nowType()) {
+            case PLUS -> tree.leaf(tokens, expect(TokenType.PLUS));
+            case MINU -> tree.leaf(tokens, expect(TokenType.MINU));
+            case NOT -> tree.leaf(tokens, expect(TokenType.NOT));
         }
-        return new VNode(childrenNodes, NodeType.UnaryOp);
+        return tree.finish(NodeType.UnaryOp, mark);
     }
 
-    private VNode FuncRParams() {
+    private int FuncRParams() {
         // FuncRParams → Exp { ',' Exp }
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(Exp());
-        while (now().getType() == TokenType.COMMA) {
-            childrenNodes.add(new VNode(expect(TokenType.COMMA)));
-            childrenNodes.add(Exp());
-        }
-        return new VNode(childrenNodes, NodeType.FuncRParams);
-    }
-
-    private VNode MulExp() {
-        // MulExp → UnaryExp | MulExp ('*' | '/' | '%') UnaryExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(UnaryExp());
-        VNode mulExpRetNode = new VNode(childrenNodes, NodeType.MulExp);
-        while (now().getType() == TokenType.MULT || now().getType() == TokenType.DIV || now().getType() == TokenType.MOD) {
-            childrenNodes.clear();
-            childrenNodes.add(mulExpRetNode);
-            childrenNodes.add(new VNode(expect(now().getType())));
-            childrenNodes.add(UnaryExp());
-            mulExpRetNode = new VNode(childrenNodes, NodeType.MulExp);
-        }
-        return mulExpRetNode;
-    }
-
-    private VNode AddExp() {
-        // AddExp → MulExp | AddExp ('+' | '−') MulExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(MulExp());
-        VNode addExpRetNode = new VNode(childrenNodes, NodeType.AddExp);
-        while (now().getType() == TokenType.PLUS || now().getType() == TokenType.MINU) {
-            childrenNodes.clear();
-            childrenNodes.add(addExpRetNode);
-            childrenNodes.add(new VNode(expect(now().getType())));
-            childrenNodes.add(MulExp());
-            addExpRetNode = new VNode(childrenNodes, NodeType.AddExp);
-        }
-        return addExpRetNode;
-    }
-
-    private VNode RelExp() {
-        // RelExp → AddExp | RelExp ('<' | '>' | '<=' | '>=') AddExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(AddExp());
-        VNode relExpRetNode = new VNode(childrenNodes, NodeType.RelExp);
-        while (now().getType() == TokenType.LSS || now().getType() == TokenType.GRE || now().getType() == TokenType.LEQ || now().getType() == TokenType.GEQ) {
-            childrenNodes.clear();
-            childrenNodes.add(relExpRetNode);
-            childrenNodes.add(new VNode(expect(now().getType())));
-            childrenNodes.add(AddExp());
-            relExpRetNode = new VNode(childrenNodes, NodeType.RelExp);
-        }
-        return relExpRetNode;
-    }
-
-    private VNode EqExp() {
-        // EqExp → RelExp | EqExp ('==' | '!=') RelExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(RelExp());
-        VNode eqExpRetNode = new VNode(childrenNodes, NodeType.EqExp);
-        while (now().getType() == TokenType.EQL || now().getType() == TokenType.NEQ) {
-            childrenNodes.clear();
-            childrenNodes.add(eqExpRetNode);
-            childrenNodes.add(new VNode(expect(now().getType())));
-            childrenNodes.add(RelExp());
-            eqExpRetNode = new VNode(childrenNodes, NodeType.EqExp);
-        }
-        return eqExpRetNode;
-    }
-
-    private VNode LAndExp() {
-        // LAndExp → EqExp | LAndExp '&&' EqExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(EqExp());
-        VNode lAndExpRetNode = new VNode(childrenNodes, NodeType.LAndExp);
-        while (now().getType() == TokenType.AND) {
-            childrenNodes.clear();
-            childrenNodes.add(lAndExpRetNode);
-            childrenNodes.add(new VNode(expect(TokenType.AND)));
-            childrenNodes.add(EqExp());
-            lAndExpRetNode = new VNode(childrenNodes, NodeType.LAndExp);
-        }
-        return lAndExpRetNode;
-    }
-
-    private VNode LOrExp() {
-        // LOrExp → LAndExp | LOrExp '||' LAndExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(LAndExp());
-        VNode lOrExpRetNode = new VNode(childrenNodes, NodeType.LOrExp);
-        while (now().getType() == TokenType.OR) {
-            childrenNodes.clear();
-            childrenNodes.add(lOrExpRetNode);
-            childrenNodes.add(new VNode(expect(TokenType.OR)));
-            childrenNodes.add(LAndExp());
-            lOrExpRetNode = new VNode(childrenNodes, NodeType.LOrExp);
-        }
-        return lOrExpRetNode;
-    }
-
-    private VNode ConstExp() {
+        int mark = tree.mark();
+        Exp();
+        while (nowType() == TokenType.COMMA) {
+            tree.leaf(tokens, expect(TokenType.COMMA));
+            Exp();
+        }
+        return tree.finish(NodeType.FuncRParams, mark);
+    }
+
+    /**
+     * 获取二元运算符的层级
+     * @return MulExp的运算符为1, 依次递增至LOrExp的运算符为6, 不是二元运算符则为0
+     */
+    private static int binaryLevel(TokenType type) {
+        switch (type) {
+            case MULT, DIV, MOD: return 1;
+            case PLUS, MINU: return 2;
+            case LSS, GRE, LEQ, GEQ: return 3;
+            case EQL, NEQ: return 4;
+            case AND: return 5;
+            case OR: return 6;
+            default: return 0;
+        }
+    }
+
+    private int BinaryExp(int maxLevel) {
+        /*
+         * MulExp → UnaryExp | MulExp ('*' | '/' | '%') UnaryExp
+         * AddExp → MulExp | AddExp ('+' | '−') MulExp
+         * RelExp → AddExp | RelExp ('<' | '>' | '<=' | '>=') AddExp
+         * EqExp → RelExp | EqExp ('==' | '!=') RelExp
+         * LAndExp → EqExp | LAndExp '&&' EqExp
+         * LOrExp → LAndExp | LOrExp '||' LAndExp
+         * UnaryExp → UnaryOp UnaryExp | PrimaryExp
+         * PrimaryExp → '(' Exp ')'
+         *
+         * 按运算符优先级分析, 同一层级连续的运算平铺为一个节点: 操作数 {运算符 操作数}
+         * 只有一个操作数的层级不生成节点
+         * maxLevel为允许出现的最高层级, Exp和ConstExp为AddExp, Cond为LOrExp
+         * 一元运算符和括号也不递归分析, 而是压入frames, 因此嵌套再深也不会耗尽调用栈
+         */
+        // 尚未结束的各层运算(越靠近栈顶层级越低), 每项为层级和其第一个操作数在构造栈中的位置
+        IntStack chains = new IntStack();
+        // 尚未结束的一元运算符和括号
+        IntStack frames = new IntStack();
+        // 当前括号内的运算在chains中的起始位置
+        int chainBase = 0;
+        while (true) {
+            while (true) {
+                if (isUnaryOp(nowType())) {
+                    frames.push(tree.mark());
+                    frames.push(UNARY_FRAME);
+                    UnaryOp();
+                } else if (nowType() == TokenType.LPARENT) {
+                    frames.push(chainBase);
+                    frames.push(maxLevel);
+                    frames.push(tree.mark());
+                    frames.push(PAREN_FRAME);
+                    tree.leaf(tokens, expect(TokenType.LPARENT));
+                    chainBase = chains.size();
+                    maxLevel = SyntaxTree.ADD_EXP_LEVEL;
+                } else {
+                    break;
+                }
+            }
+            int node = UnaryExp();
+            int level;
+            while (true) {
+                while (!frames.isEmpty() && frames.peek() == UNARY_FRAME) {
+                    frames.pop();
+                    node = tree.finish(NodeType.UnaryExp, frames.pop());
+                }
+                level = binaryLevel(nowType());
+                if (level != 0 && level <= maxLevel) {
+                    break;
+                }
+                // 当前括号(或整个表达式)内的运算都已结束
+                while (chains.size() > chainBase) {
+                    int mark = chains.pop();
+                    node = tree.finish(SyntaxTree.getBinaryType(chains.pop()), mark);
+                }
+                if (frames.isEmpty()) {
+                    return node;
+                }
+                // '(' Exp ')'
+                frames.pop();
+                int mark = frames.pop();
+                maxLevel = frames.pop();
+                chainBase = frames.pop();
+                tree.finish(NodeType.Exp, mark + 1);
+                handlePRARENTError();
+                tree.finish(NodeType.PrimaryExp, mark);
+                node = tree.finish(NodeType.UnaryExp, mark);
+            }
+            // 比当前运算符优先级高的运算都已结束, 合并为一个操作数
+            while (chains.size() > chainBase && chains.peek(1) < level) {
+                int mark = chains.pop();
+                tree.finish(SyntaxTree.getBinaryType(chains.pop()), mark);
+            }
+            if (chains.size() == chainBase || chains.peek(1) != level) {
+                chains.push(level);
+                chains.push(tree.mark() - 1);
+            }
+            tree.leaf(tokens, expect(nowType()));
+        }
+    }
+
+    private int ConstExp() {
         // ConstExp → AddExp
-        List<VNode> childrenNodes = new ArrayList<>();
-        childrenNodes.add(AddExp());
-        return new VNode(childrenNodes, NodeType.ConstExp);
+        int mark = tree.mark();
+        BinaryExp(SyntaxTree.ADD_EXP_LEVEL);
+        return tree.finish(NodeType.ConstExp, mark);
     }
 
-    private VNode IntConst() {
-        return new VNode(expect(TokenType.INTCON));
+    private int IntConst() {
+        return tree.leaf(tokens, expect(TokenType.INTCON));
     }
 
     private boolean isCharInRange(char ch) {
         return ch == 32 || ch == 33 || (ch >= 40 && ch <= 126);
     }
 
-    private void handleFormatStringError(List<VNode> childrenNodes) {
-        Token strToken = expect(TokenType.STRCON);
-        childrenNodes.add(new VNode(strToken));
-        String str = strToken.getValue();
+    private void handleFormatStringError() {
+        int strToken = expect(TokenType.STRCON);
+        int strLine = tokens.getLine(strToken);
+        tree.leaf(tokens, strToken);
+        String str = tokens.getValue(strToken);
         if (str.startsWith("\"") && str.endsWith("\"")) {
             str = str.substring(1, str.length() - 1);
         } else {
             if (Config.ERROR) {
-                errorHandler.addError(new Error(ErrorType.a, strToken.getLine()));
+                errorHandler.addError(new Error(ErrorType.a, strLine));
             }
             if (Config.DEBUG) {
-                System.out.printf("in line %d: '%s' is not a valid string constant%n", strToken.getLine(), str);
+                System.out.printf("in line %d: '%s' is not a valid string constant%n", strLine, str);
             }
             return;
         }
@@ -705,29 +754,29 @@ public class Parser {
             if (ch == '\\') {
                 if (i + 1 >= str.length() || str.charAt(i + 1) != 'n') {
                     if (Config.ERROR) {
-                        errorHandler.addError(new Error(ErrorType.a, strToken.getLine()));
+                        errorHandler.addError(new Error(ErrorType.a, strLine));
                     }
                     if (Config.DEBUG) {
-                        System.out.printf("in line %d: '%s' is not a valid string constant%n", strToken.getLine(), str);
+                        System.out.printf("in line %d: '%s' is not a valid string constant%n", strLine, str);
                     }
                     break;
                 }
             } else if (ch == '%') {
                 if (i + 1 >= str.length() || str.charAt(i + 1) != 'd') {
                     if (Config.ERROR) {
-                        errorHandler.addError(new Error(ErrorType.a, strToken.getLine()));
+                        errorHandler.addError(new Error(ErrorType.a, strLine));
                     }
                     if (Config.DEBUG) {
-                        System.out.printf("in line %d: '%s' is not a valid string constant%n", strToken.getLine(), str);
+                        System.out.printf("in line %d: '%s' is not a valid string constant%n", strLine, str);
                     }
                     break;
                 }
             } else if (!isCharInRange(ch)) {
                 if (Config.ERROR) {
-                    errorHandler.addError(new Error(ErrorType.a, strToken.getLine()));
+                    errorHandler.addError(new Error(ErrorType.a, strLine));
                 }
                 if (Config.DEBUG) {
-                    System.out.printf("in line %d: '%s' is not a valid string constant%n", strToken.getLine(), str);
+                    System.out.printf("in line %d: '%s' is not a valid string constant%n", strLine, str);
                 }
                 break;
             }
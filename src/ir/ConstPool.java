@@ -0,0 +1,114 @@
+package ir;
+
+import ir.type.IntType;
+import ir.type.Type;
+import ir.value.Const;
+import ir.value.ConstArray;
+import ir.value.ConstInt;
+import ir.value.Value;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模块内的常量池: ConstInt按(类型, 值)唯一化, ConstArray按(类型, 展开后的各整数)或(类型, 各元素)唯一化
+ * 相同的常量共用同一个对象和同一个使用链表, 各模块的常量互不共享, 编译结束后随模块一同回收
+ * 各函数体并行构造时共用一个常量池, 因此以ConcurrentHashMap实现
+ */
+public class ConstPool {
+    private final Map<Integer, ConstInt> i32s = new ConcurrentHashMap<>();
+    private final Map<IntKey, ConstInt> ints = new ConcurrentHashMap<>();
+    private final Map<DataKey, ConstArray> flatArrays = new ConcurrentHashMap<>();
+    private final Map<ArrayKey, ConstArray> arrays = new ConcurrentHashMap<>();
+    private final Map<Type, ConstArray> zeroArrays = new ConcurrentHashMap<>();
+
+    public ConstInt getConstInt(int value) {
+        return i32s.computeIfAbsent(value, ConstInt::new);
+    }
+
+    public ConstInt getConstInt(IntType type, int value) {
+        if (type == IntType.i32) {
+            return getConstInt(value);
+        }
+        return ints.computeIfAbsent(new IntKey(type, value), key -> new ConstInt(key.type, key.value));
+    }
+
+    /**
+     * 获取以elements为元素的常量数组
+     * 能展开为整数时展开存放, 并按展开的结果唯一化, elements本身不再保存;
+     * 否则元素都是常量时按各元素唯一化, 含有指令等非常量元素(局部数组的初始值)时直接创建
+     * elements中可以含有IRBuildFactory.createInitRow创建的内层各行, 展开时一并展开到同一个int[]中,
+     * 因此一个数组初始值只在常量池中保存一份整数, 内层各行只在不能展开时才逐个加入常量池
+     * @param elements 调用后不能再修改, 不能展开而唯一化时直接作为键保存
+     */
+    public ConstArray getConstArray(Type type, List<Value> elements) {
+        int[] data = ConstArray.flatten(type, elements);
+        if (data != null) {
+            // 内层各行应是createInitRow创建的中间结果, 不能是已经展开存放的数组, 否则同一份整数会保存多次
+            assert elements.stream().noneMatch(e -> e instanceof ConstArray row && row.isFlat() && !row.isZero());
+            if (isZero(data)) {
+                return getZeroArray(type);
+            }
+            return flatArrays.computeIfAbsent(new DataKey(type, data), key -> new ConstArray(key.type, key.data));
+        }
+        if (!isConstant(elements)) {
+            return new ConstArray(type, elements);
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.get(i) instanceof ConstArray row && !row.isFlat()) {
+                elements.set(i, getConstArray(row.getType(), row.getElements()));
+            }
+        }
+        // 元素已经唯一化, 列表按引用逐个比较元素即可
+        return arrays.computeIfAbsent(new ArrayKey(type, elements), key -> new ConstArray(key.type, key.elements));
+    }
+
+    /**
+     * 获取没有显式初始值(全为0)的常量数组
+     */
+    public ConstArray getZeroArray(Type type) {
+        return zeroArrays.computeIfAbsent(type, ConstArray::new);
+    }
+
+    // 各元素(包括内层各行的元素)是否都是常量
+    private static boolean isConstant(List<Value> elements) {
+        for (Value element : elements) {
+            if (element instanceof ConstArray row && !row.isFlat()) {
+                if (!isConstant(row.getElements())) {
+                    return false;
+                }
+            } else if (!(element instanceof Const)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(int[] data) {
+        for (int value : data) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record IntKey(Type type, int value) {}
+
+    // record对数组只按引用比较, 这里需要按内容比较
+    private record DataKey(Type type, int[] data) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof DataKey other && type == other.type && Arrays.equals(data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Arrays.hashCode(data);
+        }
+    }
+
+    private record ArrayKey(Type type, List<Value> elements) {}
+}
@@ -14,29 +14,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class IRBuildFactory {
-    private static IRBuildFactory instance = null;
-    private IRBuildFactory() {}
-    public static IRBuildFactory getInstance() {
-        if (instance == null)
-            instance = new IRBuildFactory();
-        return instance;
+    private final IRModule module;
+
+    public IRBuildFactory(IRModule module) {
+        this.module = module;
     }
 
     /*
-    只有全局变量/常量, 以及函数会自动在其构造函数内添加到IRModule中
+    只有全局变量/常量, 以及函数会在工厂创建时自动添加到所属的IRModule中
     而基本块, 指令, 值都不会自动添加到IRModule中, 需要手动添加
      */
 
     public Function createMainFunc() {
-        return new Function("main", new IntType(32), new ArrayList<>(), false);
+        return addFunction(new Function("main", IntType.i32, new ArrayList<>(), false));
     }
 
     public Function createFunction(String name, Type type, List<Type> parmTypes) {
-        return new Function(name, type, parmTypes, false);
+        return addFunction(new Function(name, type, parmTypes, false));
     }
 
     public Function createLibraryFunction(String name, Type type, List<Type> parmTypes) {
-        return new Function(name, type, parmTypes, true);
+        return addFunction(new Function(name, type, parmTypes, true));
+    }
+
+    private Function addFunction(Function function) {
+        module.addFunction(function);
+        return function;
     }
 
     public BasicBlock createBasicBlock(Function function) {
@@ -45,13 +48,13 @@ public class IRBuildFactory {
 
     public RetInst createRetInst(BasicBlock basicBlock, Value retValue) {
         RetInst retInst = new RetInst(retValue);
-        basicBlock.addOperand(retInst);
+        basicBlock.addInst(retInst);
         return retInst;
     }
 
     public RetInst createRetInst(BasicBlock basicBlock) {
         RetInst retInst = new RetInst();
-        basicBlock.addOperand(retInst);
+        basicBlock.addInst(retInst);
         return retInst;
     }
 
@@ -64,21 +67,23 @@ public class IRBuildFactory {
      */
     public BinaryInst createBinaryInst(BasicBlock basicBlock, Operator op, Value lhs, Value rhs) {
         BinaryInst binaryInst = new BinaryInst(lhs.getType(), op, lhs, rhs);
-        basicBlock.addOperand(binaryInst);
+        basicBlock.addInst(binaryInst);
         return binaryInst;
     }
 
     public IcmpInst createNotInst(BasicBlock basicBlock, Value value) {
-        return createIcmpInst(basicBlock, Operator.Eq, value, ConstInt.ZERO);
+        return createIcmpInst(basicBlock, Operator.Eq, value, getConstInt(0));
     }
 
     public GlobalVar createGlobalVar(String name, Type type, boolean isConst, Value value) {
-        return new GlobalVar(name, type, isConst, value);
+        GlobalVar globalVar = new GlobalVar(name, type, isConst, value);
+        module.addGlobalVar(globalVar);
+        return globalVar;
     }
 
     public StoreInst createStoreInst(BasicBlock basicBlock, Value ptr, Value value) {
         StoreInst storeInst = new StoreInst(value, ptr);
-        basicBlock.addOperand(storeInst);
+        basicBlock.addInst(storeInst);
         return storeInst;
     }
 
@@ -91,7 +96,7 @@ public class IRBuildFactory {
      */
     public AllocaInst createLocalVar(BasicBlock basicBlock, Value value, Type allocaType) {
         AllocaInst allocaInst = new AllocaInst(allocaType);
-        basicBlock.addOperand(allocaInst);
+        basicBlock.addInst(allocaInst);
         if (value != null) {
             createStoreInst(basicBlock, allocaInst, value);
         }
@@ -100,37 +105,40 @@ public class IRBuildFactory {
 
     public LoadInst createLoadInst(BasicBlock basicBlock, Value pointer) {
         LoadInst loadInst = new LoadInst(pointer);
-        basicBlock.addOperand(loadInst);
+        basicBlock.addInst(loadInst);
         return loadInst;
     }
 
     public CallInst createCallInst(BasicBlock basicBlock, Function function, List<Value> args) {
         CallInst callInst = new CallInst(function, args);
-        basicBlock.addOperand(callInst);
+        basicBlock.addInst(callInst);
         return callInst;
     }
 
     public IcmpInst createIcmpInst(BasicBlock basicBlock, Operator op, Value lhs, Value rhs) {
-        if (lhs.getType() instanceof IntType && ((IntType) lhs.getType()).getBit() == 1) {
-            lhs = new ConvInst(Operator.Zext, lhs);
-            basicBlock.addOperand(lhs);
+        if (lhs.getType() == IntType.i1) {
+            ConvInst zext = new ConvInst(Operator.Zext, lhs);
+            basicBlock.addInst(zext);
+            lhs = zext;
         }
-        if (rhs.getType() instanceof IntType && ((IntType) rhs.getType()).getBit() == 1) {
-            rhs = new ConvInst(Operator.Zext, rhs);
-            basicBlock.addOperand(rhs);
+        if (rhs.getType() == IntType.i1) {
+            ConvInst zext = new ConvInst(Operator.Zext, rhs);
+            basicBlock.addInst(zext);
+            rhs = zext;
         }
         IcmpInst icmpInst = new IcmpInst(op, lhs, rhs);
-        basicBlock.addOperand(icmpInst);
+        basicBlock.addInst(icmpInst);
         return icmpInst;
     }
 
     public BrInst createBrInst(BasicBlock basicBlock, Value cond, BasicBlock trueBlock, BasicBlock falseBlock) {
-        if (!(cond.getType() instanceof IntType && ((IntType) cond.getType()).getBit() == 1)) {
-            cond = new IcmpInst(Operator.Ne, cond, ConstInt.ZERO);
-            basicBlock.addOperand(cond);
+        if (cond.getType() != IntType.i1) {
+            IcmpInst icmpInst = new IcmpInst(Operator.Ne, cond, getConstInt(0));
+            basicBlock.addInst(icmpInst);
+            cond = icmpInst;
         }
         BrInst brInst = new BrInst(cond, trueBlock, falseBlock);
-        basicBlock.addOperand(brInst);
+        basicBlock.addInst(brInst);
         return brInst;
     }
 
@@ -138,19 +146,53 @@ public class IRBuildFactory {
 //        if (jmpBlock == null)
 //            throw new RuntimeException("jmpBlock is null");
         BrInst brInst = new BrInst(jmpBlock);
-        basicBlock.addOperand(brInst);
+        basicBlock.addInst(brInst);
         return brInst;
     }
 
     public ArrayType getArrayType(Type elementType, int length) {
-        return new ArrayType(elementType, length);
+        return ArrayType.get(elementType, length);
+    }
+
+    /**
+     * 获取i32常量, 相同的值共用一个对象
+     */
+    public ConstInt getConstInt(int value) {
+        return module.getConstPool().getConstInt(value);
+    }
+
+    /**
+     * 模块的常量池, 按下标从常量数组中取整数元素时使用
+     */
+    public ConstPool getConstPool() {
+        return module.getConstPool();
     }
 
+    /**
+     * @param array 元素列表, 调用后不能再修改
+     */
     public ConstArray createConstArray(List<Value> array) {
+        Type arrType = getArrayType(array.get(0).getType(), array.size());
+        return module.getConstPool().getConstArray(arrType, array);
+    }
+
+    /**
+     * 创建数组初始值的内层一行, 只作为中间结果交给外层, 不加入常量池
+     * 最外层的初始值由createConstArray一次展开为整数并加入常量池
+     * @param array 元素列表, 调用后不能再修改
+     */
+    public ConstArray createInitRow(List<Value> array) {
         Type arrType = getArrayType(array.get(0).getType(), array.size());
         return new ConstArray(arrType, array);
     }
 
+    /**
+     * 获取全为0的常量数组
+     */
+    public ConstArray getZeroArray(Type arrType) {
+        return module.getConstPool().getZeroArray(arrType);
+    }
+
     /**
      * 创建无显式初始值的全局数组
      * @param name
@@ -159,7 +201,7 @@ public class IRBuildFactory {
      * @return
      */
     public GlobalVar createGlobalArray(String name, Type arrType, boolean isConst) {
-        ConstArray array = new ConstArray(arrType);
+        ConstArray array = getZeroArray(arrType);
         return createGlobalVar(name, arrType, isConst, array);
     }
 
@@ -174,13 +216,13 @@ public class IRBuildFactory {
     public GlobalVar createGlobalArray(String name, Type arrType, boolean isConst, List<Value> arr) {
         if (arr == null || arr.isEmpty())
             return createGlobalArray(name, arrType, isConst);
-        ConstArray array = new ConstArray(arrType, arr);
+        ConstArray array = module.getConstPool().getConstArray(arrType, arr);
         return createGlobalVar(name, arrType, isConst, array);
     }
 
     public GEPInst createGEPInst(BasicBlock basicBlock, Value pointer, List<Value> indices) {
         GEPInst gepInst = new GEPInst(pointer, indices);
-        basicBlock.addOperand(gepInst);
+        basicBlock.addInst(gepInst);
         return gepInst;
     }
 
@@ -189,15 +231,16 @@ public class IRBuildFactory {
             createStoreInst(blk, pointer, value);
         } else {
             ArrayList<Value> list = new ArrayList<>();
-            list.add(ConstInt.ZERO);
+            list.add(getConstInt(0));
 //            list.add(idx);
 //            createGEPInst(blk, pointer, list);
             for (int i = 0; i < ((ArrayType) ((PointerType) pointer.getType()).getTargetType()).getLength(); i++) {
-                ConstInt nidx = new ConstInt(i);
+                ConstInt nidx = getConstInt(i);
                 list.add(nidx);
                 GEPInst ptr = createGEPInst(blk, pointer, list);
                 list.remove(list.size() - 1);
-                initArray(blk, ptr, nidx, ((ConstArray) value).getArray().get(i));
+                ConstArray array = (ConstArray) value;
+                initArray(blk, ptr, nidx, array.getElement(i, module.getConstPool()));
             }
         }
     }
@@ -205,11 +248,11 @@ public class IRBuildFactory {
     public AllocaInst createLocalArray(BasicBlock basicBlock, Type arrType, Value value) {
         AllocaInst allocaInst = new AllocaInst(arrType);
         // TODO: 为数组设置初始值
-        basicBlock.addOperand(allocaInst);
+        basicBlock.addInst(allocaInst);
         if (value != null) {
 //            System.out.println(allocaInst);
 //            System.out.println(value);
-            initArray(basicBlock, allocaInst, ConstInt.ZERO, value);
+            initArray(basicBlock, allocaInst, getConstInt(0), value);
         }
         return allocaInst;
     }
@@ -2,24 +2,19 @@ package ir;
 
 import ir.value.Function;
 import ir.value.GlobalVar;
-import utils.IOUtils;
+import utils.OutputSink;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class IRModule {
-    private static IRModule instance;
-    private IRModule() {
+    public IRModule() {
         globalVars = new ArrayList<>();
         functions = new ArrayList<>();
     }
-    public static IRModule getInstance() {
-        if (instance == null)
-            instance = new IRModule();
-        return instance;
-    }
     private List<GlobalVar> globalVars;
     private List<Function> functions;
+    private final ConstPool constPool = new ConstPool();
 
     public List<GlobalVar> getGlobalVars() {
         return globalVars;
@@ -29,6 +24,10 @@ public class IRModule {
         return functions;
     }
 
+    public ConstPool getConstPool() {
+        return constPool;
+    }
+
     public void addGlobalVar(GlobalVar globalVar) {
         globalVars.add(globalVar);
     }
@@ -37,12 +36,15 @@ public class IRModule {
         this.functions.add(function);
     }
 
-    public void print2Buffer() {
+    public void print2Sink(OutputSink sink) {
+        IRWriter writer = new IRWriter(sink);
         for (GlobalVar globalVar : globalVars) {
-            IOUtils.appendBuffer(globalVar.toString());
+            sink.newItem();
+            writer.writeGlobalVar(globalVar);
         }
         for (Function function : functions) {
-            IOUtils.appendBuffer(function.toString());
+            sink.newItem();
+            writer.writeFunction(function);
         }
     }
 }
@@ -0,0 +1,329 @@
+package ir;
+
+import ir.type.ArrayType;
+import ir.type.IntType;
+import ir.type.LabelType;
+import ir.type.PointerType;
+import ir.type.Type;
+import ir.type.VoidType;
+import ir.value.BasicBlock;
+import ir.value.ConstArray;
+import ir.value.ConstInt;
+import ir.value.Function;
+import ir.value.GlobalVar;
+import ir.value.Value;
+import ir.value.instructions.Instruction;
+import ir.value.instructions.mem.GEPInst;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * 将中间代码直接按LLVM IR的文本格式写入输出, 不再为每条指令, 基本块和函数拼接中间字符串
+ * 各IR类的toString也由此生成, 因此这里是IR文本格式的唯一来源
+ */
+public class IRWriter {
+    private final Appendable out;
+    // 当前所输出函数的局部值编号表
+    private SlotTracker slots = null;
+
+    public IRWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * 将单个IR对象(全局变量, 函数, 基本块, 指令, 常量)转换为字符串, 主要用于调试
+     * 单独的指令不知道所在的函数, 其中局部值的编号为空
+     */
+    public static String toString(Value value) {
+        StringBuilder sb = new StringBuilder();
+        IRWriter writer = new IRWriter(sb);
+        if (value instanceof GlobalVar globalVar) {
+            writer.writeGlobalVar(globalVar);
+        } else if (value instanceof Function function) {
+            writer.writeFunction(function);
+        } else if (value instanceof BasicBlock basicBlock) {
+            if (basicBlock.getParent() != null) {
+                writer.slots = new SlotTracker(basicBlock.getParent());
+            }
+            writer.writeBasicBlock(basicBlock);
+        } else if (value instanceof Instruction inst) {
+            writer.writeInst(inst);
+        } else {
+            writer.writeConst(value);
+        }
+        return sb.toString();
+    }
+
+    public void writeGlobalVar(GlobalVar globalVar) {
+        putName(globalVar).put(" = dso_local ").put(globalVar.isConst() ? "constant" : "global").put(' ');
+        writeConst(globalVar.getValue());
+    }
+
+    public void writeFunction(Function function) {
+        boolean isLibrary = function.isLibrary();
+        slots = new SlotTracker(function);
+        put(isLibrary ? "declare " : "define dso_local ");
+        writeType(function.getReturnType());
+        put(" @").putName(function).put('(');
+        List<? extends Value> args = function.getArgs();
+        for (int i = 0; i < args.size(); i++) {
+            if (i != 0) {
+                put(", ");
+            }
+            writeType(args.get(i).getType());
+            if (!isLibrary) {
+                put(' ').putName(args.get(i));
+            }
+        }
+        if (function.getBasicBlocks().isEmpty()) {
+            put(')');
+        } else {
+            put(") {");
+            for (BasicBlock basicBlock : function.getBasicBlocks()) {
+                // 空的基本块不输出
+                if (!basicBlock.isEmpty()) {
+                    writeBasicBlock(basicBlock);
+                }
+            }
+            put("}\n");
+        }
+        slots = null;
+    }
+
+    public void writeBasicBlock(BasicBlock basicBlock) {
+        put('\n').putName(basicBlock).put(":\n");
+        for (Instruction inst : basicBlock.getInstructions()) {
+            put("  ");
+            writeInst(inst);
+            put('\n');
+        }
+    }
+
+    public void writeInst(Instruction inst) {
+        List<Value> operands = inst.getOperands();
+        switch (inst.getOp()) {
+            case Add, Sub, Mul, Div, Mod, Shl, Shr, And, Or -> {
+                putName(inst).put(" = ").put(binaryOpName(inst)).put(' ');
+                writeType(operands.get(0).getType());
+                put(' ').putName(operands.get(0)).put(", ").putName(operands.get(1));
+            }
+            case Lt, Le, Ge, Gt, Eq, Ne -> {
+                putName(inst).put(" = icmp ").put(icmpOpName(inst)).put(' ');
+                writeType(operands.get(0).getType());
+                put(' ').putName(operands.get(0)).put(", ").putName(operands.get(1));
+            }
+            case Zext -> putName(inst).put(" = zext i1 ").putName(operands.get(0)).put(" to i32");
+            case Bitcast -> {
+                putName(inst).put(" = bitcast ");
+                writeType(operands.get(0).getType());
+                putName(operands.get(0)).put(" to i32*");
+            }
+            case Trunc -> putName(inst).put(" = trunc i32 ").putName(operands.get(0)).put(" to i1");
+            case Alloca -> {
+                putName(inst).put(" = alloca ");
+                writeType(((PointerType) inst.getType()).getTargetType());
+            }
+            case Load -> {
+                putName(inst).put(" = load ");
+                writeType(inst.getType());
+                put(", ");
+                writeTypedOperand(operands.get(0));
+            }
+            case Store -> {
+                put("store ");
+                writeTypedOperand(operands.get(0));
+                put(", ");
+                writeTypedOperand(operands.get(1));
+            }
+            case GEP -> {
+                Value pointer = ((GEPInst) inst).getPointer();
+                putName(inst).put(" = getelementptr ");
+                // 如果是字符串，需要加 inbounds
+                if (pointer.getType() instanceof PointerType pointerType && pointerType.isString()) {
+                    put("inbounds ");
+                }
+                writeType(((PointerType) pointer.getType()).getTargetType());
+                put(", ");
+                writeTypedOperand(pointer);
+                for (int i = 1; i < operands.size(); i++) {
+                    put(", ");
+                    writeTypedOperand(operands.get(i));
+                }
+            }
+            case Call -> {
+                if (!(inst.getType() instanceof VoidType)) {
+                    putName(inst).put(" = ");
+                }
+                put("call ");
+                writeType(inst.getType());
+                put(" @").putName(operands.get(0)).put('(');
+                for (int i = 1; i < operands.size(); i++) {
+                    if (i != 1) {
+                        put(", ");
+                    }
+                    writeTypedOperand(operands.get(i));
+                }
+                put(')');
+            }
+            case Br -> {
+                if (operands.size() == 1) {
+                    put("br label %").putName(operands.get(0));
+                } else {
+                    put("br i1 ").putName(operands.get(0))
+                            .put(", label %").putName(operands.get(1))
+                            .put(", label %").putName(operands.get(2));
+                }
+            }
+            case Ret -> {
+                if (operands.size() == 1) {
+                    put("ret ");
+                    writeTypedOperand(operands.get(0));
+                } else {
+                    put("ret void");
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 输出常量初始值, 形如 i32 1, [2 x i32] [i32 1, i32 2] 或 [2 x i32] zeroinitializer
+     */
+    public void writeConst(Value value) {
+        if (value instanceof ConstInt constInt) {
+            put("i32 ").put(constInt.getValue());
+        } else if (value instanceof ConstArray constArray) {
+            writeType(constArray.getType());
+            if (constArray.isZero()) {
+                put(" zeroinitializer");
+            } else {
+                put(" [");
+                for (int i = 0; i < constArray.getLength(); i++) {
+                    if (i != 0) {
+                        put(", ");
+                    }
+                    if (constArray.hasIntElements()) {
+                        put("i32 ").put(constArray.getInt(i));
+                    } else {
+                        writeConst(constArray.getElement(i));
+                    }
+                }
+                put(']');
+            }
+        } else {
+            put(String.valueOf(value));
+        }
+    }
+
+    /**
+     * 直接逐层输出类型名, 不为嵌套的数组和指针类型拼接字符串
+     */
+    public void writeType(Type type) {
+        if (type instanceof IntType intType) {
+            put(intTypeName(intType));
+        } else if (type instanceof PointerType pointerType) {
+            writeType(pointerType.getTargetType());
+            put('*');
+        } else if (type instanceof ArrayType arrayType) {
+            put('[').put(arrayType.getLength()).put(" x ");
+            writeType(arrayType.getElementType());
+            put(']');
+        } else if (type instanceof VoidType) {
+            put("void");
+        } else if (type instanceof LabelType) {
+            put("label");
+        } else {
+            put(String.valueOf(type));
+        }
+    }
+
+    private void writeTypedOperand(Value value) {
+        writeType(value.getType());
+        put(' ').putName(value);
+    }
+
+    /**
+     * 输出值的名称, 局部值输出其编号: 参数和指令为 %N, 基本块为 N
+     */
+    private IRWriter putName(Value value) {
+        int slot = slots == null ? -1 : slots.getSlot(value);
+        if (slot < 0) {
+            return put(value.getName());
+        }
+        if (!(value instanceof BasicBlock)) {
+            put('%');
+        }
+        return put(slot);
+    }
+
+    private static String intTypeName(IntType type) {
+        switch (type.getBit()) {
+            case 1: return "i1";
+            case 8: return "i8";
+            case 32: return "i32";
+            default: return "i" + type.getBit();
+        }
+    }
+
+    private static String binaryOpName(Instruction inst) {
+        switch (inst.getOp()) {
+            case Add: return "add";
+            case Sub: return "sub";
+            case Mul: return "mul";
+            case Div: return "sdiv";
+            case Mod: return "srem";
+            case Shl: return "shl";
+            case Shr: return "ashr";
+            case And: return "and";
+            case Or: return "or";
+            default: return null;
+        }
+    }
+
+    private static String icmpOpName(Instruction inst) {
+        switch (inst.getOp()) {
+            case Eq: return "eq";
+            case Ne: return "ne";
+            case Gt: return "sgt";
+            case Ge: return "sge";
+            case Lt: return "slt";
+            case Le: return "sle";
+            default: return null;
+        }
+    }
+
+    private IRWriter put(CharSequence s) {
+        try {
+            out.append(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private IRWriter put(char c) {
+        try {
+            out.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private IRWriter put(int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                return put("-2147483648");
+            }
+            put('-');
+            value = -value;
+        }
+        if (value >= 10) {
+            put(value / 10);
+        }
+        return put((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,43 @@
+package ir;
+
+import ir.value.Argument;
+import ir.value.BasicBlock;
+import ir.value.Function;
+import ir.value.Value;
+import ir.value.instructions.Instruction;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 函数内局部值的编号表
+ * 参数, 基本块和产生值的指令在构造时不命名, 输出时才按其在函数中的顺序依次编号为 %0, %1, ...
+ * 编号只与函数本身有关, 因此各函数可以独立构造和输出
+ * 不输出的空基本块同样占用一个编号
+ */
+public class SlotTracker {
+    private final Map<Value, Integer> slots = new IdentityHashMap<>();
+
+    public SlotTracker(Function function) {
+        int slot = 0;
+        for (Argument arg : function.getArgs()) {
+            slots.put(arg, slot++);
+        }
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            slots.put(basicBlock, slot++);
+            for (Instruction inst : basicBlock.getInstructions()) {
+                if (inst.hasValue()) {
+                    slots.put(inst, slot++);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 局部值的编号, 不是该函数的局部值则为-1
+     */
+    public int getSlot(Value value) {
+        Integer slot = slots.get(value);
+        return slot == null ? -1 : slot;
+    }
+}
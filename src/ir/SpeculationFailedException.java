@@ -0,0 +1,14 @@
+package ir;
+
+/**
+ * 融合检查模式下, Vistor在生成中间代码的同时发现了可能的语义错误
+ * 此时已生成的中间代码作废, 改由ErrorHandler重新检查
+ */
+public class SpeculationFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SpeculationFailedException(String message) {
+        // 只用于回退, 不需要调用栈
+        super(message, null, false, false);
+    }
+}
@@ -3,16 +3,26 @@ package ir;
 import ir.value.User;
 import ir.value.Value;
 
+/**
+ * user的第pos个操作数对value的一次使用
+ * 同时是value的使用链表中的节点(侵入式双向链表), 因此加入, 移除和修改使用的值都是O(1)的
+ */
 public class Use {
     private Value value;
-    private User user;
+    private final User user;
     // pos表示该value是user的第几个操作数
-    private int pos;
+    private final int pos;
+    // value的使用链表中的前后节点, 由Value维护
+    private Use prev;
+    private Use next;
 
     public Use(Value value, User user, int pos) {
         this.value = value;
         this.user = user;
         this.pos = pos;
+        if (value != null) {
+            value.addUse(this);
+        }
     }
 
     public Value getValue() {
@@ -26,4 +36,37 @@ public class Use {
     public int getPos() {
         return pos;
     }
+
+    /**
+     * 将使用的值改为value: 从原值的使用链表中移除, 加入新值的使用链表
+     * @param value 新值, 为null时只移除
+     */
+    public void setValue(Value value) {
+        if (this.value == value) {
+            return;
+        }
+        if (this.value != null) {
+            this.value.removeUse(this);
+        }
+        this.value = value;
+        if (value != null) {
+            value.addUse(this);
+        }
+    }
+
+    public Use getPrev() {
+        return prev;
+    }
+
+    public void setPrev(Use prev) {
+        this.prev = prev;
+    }
+
+    public Use getNext() {
+        return next;
+    }
+
+    public void setNext(Use next) {
+        this.next = next;
+    }
 }
@@ -1,5 +1,6 @@
 package ir;
 
+import config.Config;
 import ir.type.*;
 import ir.value.*;
 import ir.value.instructions.CallInst;
@@ -11,18 +12,24 @@ import ir.value.instructions.terminator.BrInst;
 import ir.value.instructions.terminator.RetInst;
 import node.NodeType;
 import node.VNode;
+import symbol.ScopeTable;
 import token.TokenType;
 import utils.Pair;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
 
 public class Vistor {
-    private static Vistor instance = null;
     private final IRBuildFactory factory;
-    private List<Map<String, Value>> symTlbs;
-    private List<Map<String, Pair<Boolean, Integer>>> constTlbs;
-    private List<Map<String, Pair<Boolean, ConstArray>>> constArrayTlbs;
+    // 各层作用域共用的符号表, 以标识符编号为键, 每个名字的变量(或函数)与其常量值记录在同一项中
+    private final ScopeTable<Symbol> symbols;
+    // 库函数, getint和printf直接调用, 不经过符号表
+    private Function getintFunc;
+    private Function putintFunc;
+    private Function putchFunc;
     private BasicBlock curBlk;
+    // break, continue和条件跳转的目标尚未确定时使用的占位块, 回填后替换
+    private final BasicBlock placeHolder = new BasicBlock();
 
     /*
      * 需要回填的基本块或者基本块之间的符号|| &&
@@ -37,196 +44,275 @@ public class Vistor {
     private Function curFunc;
     private boolean isConstExp;
     private int inFor = 0;
+    /*
+     * 融合检查模式: 生成中间代码的同时进行语义检查, 发现可能的错误时抛出SpeculationFailedException
+     * 检查是保守的, 只保证通过检查的程序没有ErrorHandler会报告的错误, 可疑的程序一律交给ErrorHandler
+     */
+    private final boolean checking;
+    // 融合检查模式下各函数的定义顺序, 函数只能调用自身和之前定义的函数, main不在其中
+    private final Map<Function, Integer> funcOrder;
+    private int curFuncOrder;
+
+    public Vistor(IRBuildFactory factory) {
+        this(factory, false);
+    }
 
     /**
-     * 当前的临时变量编号, 注意这个编号在每个函数中都是从0开始的, 且编号还会分配给基本块
+     * @param checking 是否在生成中间代码的同时进行语义检查
      */
-    private Vistor() {
-        factory = IRBuildFactory.getInstance();
-        symTlbs = new ArrayList<>();
-        constTlbs = new ArrayList<>();
-        constArrayTlbs = new ArrayList<>();
+    public Vistor(IRBuildFactory factory, boolean checking) {
+        this.factory = factory;
+        this.checking = checking;
+        funcOrder = new IdentityHashMap<>();
+        symbols = new ScopeTable<>();
         curBlk = null;
         curFunc = null;
         isConstExp = false;
     }
 
-    public static Vistor getInstance() {
-        if (instance == null)
-            instance = new Vistor();
-        return instance;
+    /**
+     * 生成函数体用的Vistor: 共享parent中已经生成完毕的全局符号表, 局部的符号表和状态各自独立
+     */
+    private Vistor(Vistor parent) {
+        this.factory = parent.factory;
+        this.checking = parent.checking;
+        this.funcOrder = parent.funcOrder;
+        symbols = new ScopeTable<>(parent.symbols.getView());
+        getintFunc = parent.getintFunc;
+        putintFunc = parent.putintFunc;
+        putchFunc = parent.putchFunc;
+        curBlk = null;
+        curFunc = null;
+        isConstExp = false;
     }
 
     private boolean isInGlobal() {
         return curFunc == null;
     }
 
-    private String switchBlk() {
+    private void switchBlk() {
         curBlk = factory.createBasicBlock(curFunc);
-        return curBlk.getName();
     }
 
     private Value calc(Operator op, int l, int r) {
         switch (op) {
             case Add -> {
-                return new ConstInt(l + r);
+                return factory.getConstInt(l + r);
             }
             case Sub -> {
-                return new ConstInt(l - r);
+                return factory.getConstInt(l - r);
             }
             case Mul -> {
-                return new ConstInt(l * r);
+                return factory.getConstInt(l * r);
             }
             case Div -> {
-                return new ConstInt(l / r);
+                return factory.getConstInt(l / r);
             }
             case Mod -> {
-                return new ConstInt(l % r);
+                return factory.getConstInt(l % r);
             }
         }
-        return ConstInt.ZERO;
+        return factory.getConstInt(0);
     }
 
     private Value calc(Operator op, int val) {
         if (Objects.requireNonNull(op) == Operator.Not) {
-            return val == 0 ? ConstInt.ONE : ConstInt.ZERO;
+            return val == 0 ? factory.getConstInt(1) : factory.getConstInt(0);
         }
         return null;
     }
 
-    private Map<String, Value> getCurSymTbl() {
-        return symTlbs.get(symTlbs.size() - 1);
-    }
-
-    private Map<String, Pair<Boolean, Integer>> getCurConstTbl() {
-        return constTlbs.get(constTlbs.size() - 1);
-    }
-
-    private Map<String, Pair<Boolean, ConstArray>> getCurConstArrayTbl() {
-        return constArrayTlbs.get(constArrayTlbs.size() - 1);
-    }
-
     /**
-     * 递归地在符号表中寻找匹配的符号
+     * 在符号表中寻找最内层的匹配的符号
      *
-     * @param name 符号的名字
+     * @param ident 符号的标识符编号
      * @return value: Value | null, 这里的Value可能是Function, GlobalVar, AllocaInst, Argument
      */
-    private Value findSym(String name) {
-        for (int i = symTlbs.size() - 1; i >= 0; i--) {
-            if (symTlbs.get(i).containsKey(name))
-                return symTlbs.get(i).get(name);
-        }
-        return null;
+    private Value findSym(int ident) {
+        Symbol symbol = symbols.get(ident);
+        return symbol == null ? null : symbol.value;
     }
 
-    private Pair<Boolean, Integer> findConst(String name) {
-        for (int i = constTlbs.size() - 1; i >= 0; i--) {
-            if (constTlbs.get(i).containsKey(name))
-                return constTlbs.get(i).get(name);
-        }
-        return null;
+    private Pair<Boolean, Integer> findConst(int ident) {
+        Symbol symbol = symbols.get(ident);
+        return symbol == null ? null : symbol.aConst;
     }
 
-    private void addSymbol(String name, Value value) {
-        getCurSymTbl().put(name, value);
-    }
-
-    private void addConst(String name, Integer value, Boolean realConst) {
-        getCurConstTbl().put(name, new Pair<>(realConst, value));
-    }
-
-    private void addConstArray(String name, ConstArray value, Boolean realConst) {
-        getCurConstArrayTbl().put(name, new Pair<>(realConst, value));
-    }
-
-    private Pair<Boolean, ConstArray> findConstArray(String name) {
-        for (int i = constArrayTlbs.size() - 1; i >= 0; i--) {
-            if (constArrayTlbs.get(i).containsKey(name))
-                return constArrayTlbs.get(i).get(name);
+    private void addSymbol(VNode identNode, Value value) {
+        int ident = identNode.getTokenIdent();
+        if (checking && symbols.getInCurrentScope(ident) != null) {
+            // b
+            throw new SpeculationFailedException("redefined symbol " + identNode.getTokenValue());
         }
-        return null;
+        symbols.put(ident, new Symbol(value));
     }
 
-    private void pushSymTbl() {
-        symTlbs.add(new HashMap<>());
+    // 常量值记录在addSymbol刚加入的同名符号中
+    private void addConst(VNode identNode, Integer value, Boolean realConst) {
+        symbols.getInCurrentScope(identNode.getTokenIdent()).aConst = new Pair<>(realConst, value);
     }
 
-    private void pushConstTbl() {
-        constTlbs.add(new HashMap<>());
+    private void addConstArray(VNode identNode, ConstArray value, Boolean realConst) {
+        symbols.getInCurrentScope(identNode.getTokenIdent()).constArray = new Pair<>(realConst, value);
     }
 
-    private void pushConstArrayTbl() {
-        constArrayTlbs.add(new HashMap<>());
+    private Pair<Boolean, ConstArray> findConstArray(int ident) {
+        Symbol symbol = symbols.get(ident);
+        return symbol == null ? null : symbol.constArray;
     }
 
     private void pushTbl() {
-        pushSymTbl();
-        pushConstTbl();
-        pushConstArrayTbl();
+        symbols.enterScope();
     }
 
-    private void popSymTbl() {
-        symTlbs.remove(symTlbs.size() - 1);
+    private void popTbl() {
+        symbols.exitScope();
     }
 
-    private void popConstTbl() {
-        constTlbs.remove(constTlbs.size() - 1);
+    /**
+     * 融合检查: name应为已定义的变量或常量, 作为赋值的左值时不能是常量 // c h
+     */
+    private void checkVarRef(VNode identNode, boolean isAssign) {
+        String name = identNode.getTokenValue();
+        Symbol symbol = symbols.get(identNode.getTokenIdent());
+        if (symbol == null || symbol.value instanceof Function) {
+            throw new SpeculationFailedException("undefined variable " + name);
+        }
+        Pair<Boolean, Integer> aConst = symbol.aConst;
+        Pair<Boolean, ConstArray> constArray = symbol.constArray;
+        if (isAssign && (aConst != null && aConst.getFirst() || constArray != null && constArray.getFirst())) {
+            throw new SpeculationFailedException("assign to constant " + name);
+        }
     }
 
-    private void popConstArrayTbl() {
-        constArrayTlbs.remove(constArrayTlbs.size() - 1);
+    /**
+     * 融合检查: 被调用的应为自身或之前定义的函数, 实参与形参的个数和维数一致 // c d e
+     * 与ErrorHandler一致, 只有直接以LVal作实参时才可能是数组, 其余表达式都视为int
+     */
+    private void checkCall(String name, Value func, VNode funcRParamsNode, List<Value> funcRParams) {
+        Integer order = func instanceof Function ? funcOrder.get(func) : null;
+        if (order == null || order > curFuncOrder) {
+            throw new SpeculationFailedException("undefined function " + name);
+        }
+        List<Argument> args = ((Function) func).getArgs();
+        if (args.size() != funcRParams.size()) {
+            throw new SpeculationFailedException("wrong argument count for " + name);
+        }
+        if (funcRParamsNode == null) {
+            return;
+        }
+        int i = 0;
+        for (VNode node : funcRParamsNode.children()) {
+            if (node.getNodeType() == NodeType.Exp) {
+                int dimension = getDimension(funcRParams.get(i).getType());
+                if (dimension != getDimension(args.get(i).getType()) || dimension != 0 && !isLValExp(node)) {
+                    throw new SpeculationFailedException("wrong argument type for " + name);
+                }
+                i++;
+            }
+        }
     }
 
-    private void popTbl() {
-        popSymTbl();
-        popConstTbl();
-        popConstArrayTbl();
+    // 类型对应的数组维数: int为0, 指针为所指的数组维数加1, void为-1
+    private static int getDimension(Type type) {
+        if (type instanceof VoidType) {
+            return -1;
+        }
+        int dimension = 0;
+        if (type instanceof PointerType) {
+            dimension++;
+            type = ((PointerType) type).getTargetType();
+        }
+        while (type instanceof ArrayType) {
+            dimension++;
+            type = ((ArrayType) type).getElementType();
+        }
+        return dimension;
     }
 
-    private final Map<String, TokenType> tokenTypeMap = new HashMap<>() {{
-        for (TokenType tokenType : TokenType.values()) {
-            put(tokenType.toString(), tokenType);
+    // Exp → AddExp 是否只由一个LVal构成, 平铺存放时此时Exp的子节点即为UnaryExp
+    private static boolean isLValExp(VNode expNode) {
+        VNode root = expNode.get1stChildNode();
+        if (root.getNodeType() != NodeType.UnaryExp || root.get1stChildNode().getNodeType() != NodeType.PrimaryExp) {
+            return false;
         }
-    }};
-
-    /**
-     * 从语法树中的终结符节点获取其TokenType
-     *
-     * @param endNode 终结符
-     * @return TokenType枚举
-     */
-    private TokenType getEndNodeTokenType(VNode endNode) {
-        String s = endNode.getValue().split(" ")[0];
-        return tokenTypeMap.getOrDefault(s, null);
+        return root.get1stChildNode().get1stChildNode().getNodeType() == NodeType.LVal;
     }
 
     /**
-     * 从语法树中的终结符节点获取其值
-     *
-     * @param endNode 终结符
-     * @return 形如";"或"a"的字符串
+     * 融合检查: 与ErrorHandler一致, 以函数体最后一条语句是否为带返回值的return判断int函数是否有返回值 // g
+     * 最后一条语句为语句块时取块中最后一条, 为if或for语句时取其最后一个子语句
      */
-    private String getEndNodeValue(VNode endNode) {
-        String s = endNode.getValue();
-        return s.substring(s.indexOf(" ") + 1);
+    private static boolean endsWithReturnValue(VNode blockNode) {
+        VNode node = blockNode;
+        while (true) {
+            // Block → '{' { BlockItem } '}'
+            VNode lastItem = null;
+            for (VNode child : node.children()) {
+                if (child.getNodeType() == NodeType.BlockItem) {
+                    lastItem = child;
+                }
+            }
+            if (lastItem == null || lastItem.get1stChildNode().getNodeType() != NodeType.Stmt) {
+                return false;
+            }
+            VNode stmtNode = lastItem.get1stChildNode();
+            while (true) {
+                VNode firstChildNode = stmtNode.get1stChildNode();
+                if (firstChildNode.getNodeType() == NodeType.Block) {
+                    node = firstChildNode;
+                    break;
+                }
+                if (firstChildNode.getNodeType() != NodeType.EndNode) {
+                    return false;
+                }
+                switch (firstChildNode.getTokenType()) {
+                    case IFTK, FORTK -> stmtNode = stmtNode.getLastChildNode();
+                    case RETURNTK -> {
+                        return stmtNode.getChildCount() > 2;
+                    }
+                    default -> {
+                        return false;
+                    }
+                }
+            }
+        }
     }
 
     // CompUnit → {Decl} {FuncDef} MainFuncDef
+    // 先依次生成全局变量和各函数的签名, 此后全局符号表不再改变, 各函数体互不依赖, 可以并行生成
+    // 函数在IRModule中的顺序由签名的生成顺序决定, 局部值的编号在输出时才按函数分配, 因此输出与顺序生成时相同
     public void visitCompUnit(VNode CompUnitNode) {
         pushTbl();
         List<Type> paramTypes = new ArrayList<>();
-        addSymbol("getint", factory.createLibraryFunction("getint", IntType.i32, paramTypes));
+        getintFunc = factory.createLibraryFunction("getint", IntType.i32, paramTypes);
         paramTypes.add(IntType.i32);
-        addSymbol("putint", factory.createLibraryFunction("putint", VoidType.voidType, paramTypes));
-        addSymbol("putch", factory.createLibraryFunction("putch", VoidType.voidType, paramTypes));
-        for (VNode node : CompUnitNode.getChildrenNodes()) {
+        putintFunc = factory.createLibraryFunction("putint", VoidType.voidType, paramTypes);
+        putchFunc = factory.createLibraryFunction("putch", VoidType.voidType, paramTypes);
+        List<Pair<VNode, Function>> funcs = new ArrayList<>();
+        for (VNode node : CompUnitNode.children()) {
             switch (node.getNodeType()) {
                 case Decl -> {
                     visitDecl(node);
                 }
-                case FuncDef -> visitFuncDef(node);
-                case MainFuncDef -> visitMainFuncDef(node);
+                case FuncDef -> {
+                    Function func = visitFuncDef(node);
+                    funcOrder.put(func, funcOrder.size());
+                    funcs.add(new Pair<>(node, func));
+                }
+                case MainFuncDef -> funcs.add(new Pair<>(node, visitMainFuncDef(node)));
+            }
+        }
+        if (Config.PARALLEL_IR && funcs.size() > 1) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Pair<VNode, Function> func : funcs) {
+                tasks.add(ForkJoinTask.adapt(() -> new Vistor(this).visitFuncBody(func.getFirst(), func.getSecond())));
+            }
+            // 在ForkJoinPool中(如批量编译时)调用则使用同一个线程池, 否则使用公共线程池
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (Pair<VNode, Function> func : funcs) {
+                visitFuncBody(func.getFirst(), func.getSecond());
             }
         }
         popTbl();
@@ -244,12 +330,12 @@ public class Vistor {
     // ConstDecl → 'const' BType ConstDef { ',' ConstDef } ';'
     private void visitConstDecl(VNode constDeclNode) {
         VNode typeEndNode = constDeclNode.getChildNode(1).get1stChildNode();
-        TokenType endNodeTokenType = getEndNodeTokenType(typeEndNode);
+        TokenType endNodeTokenType = typeEndNode.getTokenType();
         Type type = null;
         if (endNodeTokenType == TokenType.INTTK) {
             type = IntType.i32;
         }
-        for (VNode node : constDeclNode.getChildrenNodes()) {
+        for (VNode node : constDeclNode.children()) {
             if (node.getNodeType() == NodeType.ConstDef) {
                 visitConstDef(node, type);
             }
@@ -258,10 +344,11 @@ public class Vistor {
 
     // ConstDef → Ident { '[' ConstExp ']' } '=' ConstInitVal
     private void visitConstDef(VNode constDefNode, Type atomType) {
-        String name = getEndNodeValue(constDefNode.get1stChildNode());
+        VNode identNode = constDefNode.get1stChildNode();
+        String name = identNode.getTokenValue();
         // TODOn: 这里没有考虑数组
         List<Integer> dims = new ArrayList<>();
-        for (VNode node : constDefNode.getChildrenNodes()) {
+        for (VNode node : constDefNode.children()) {
             if (node.getNodeType() == NodeType.ConstExp)
                 dims.add(((ConstInt) visitConstExp(node)).getValue());
         }
@@ -273,54 +360,55 @@ public class Vistor {
                 arrType = factory.getArrayType(arrType, dims.get(i));
             }
         }
-        Value value = visitConstInitVal(constDefNode.getLastChildNode(), arrType == null ? atomType : arrType);
+        Value value = visitConstInitVal(constDefNode.getLastChildNode(), arrType == null ? atomType : arrType, true);
         if (isInGlobal()) {
             if (arrType == null ){
                 // not array
                 GlobalVar globalVar = factory.createGlobalVar(name, atomType, true, value);
-                addSymbol(name, globalVar);
-                addConst(name, ((ConstInt) value).getValue(), true);
+                addSymbol(identNode, globalVar);
+                addConst(identNode, ((ConstInt) value).getValue(), true);
             } else {
                 // array
                 // TODOn: 设置初始化值
                 GlobalVar globalVar = factory.createGlobalVar(name, arrType, true, value);
-                addSymbol(name, globalVar);
-                addConstArray(name, (ConstArray) value, true);
+                addSymbol(identNode, globalVar);
+                addConstArray(identNode, (ConstArray) value, true);
             }
         } else {
             if (arrType == null) {
                 // not array
                 AllocaInst allocaInst = factory.createLocalVar(curBlk, value, atomType);
-                addSymbol(name, allocaInst);
-                addConst(name, ((ConstInt) value).getValue(), true);
+                addSymbol(identNode, allocaInst);
+                addConst(identNode, ((ConstInt) value).getValue(), true);
             } else {
                 // array
                 // TODOn: 设置初始化值
                 AllocaInst localArray = factory.createLocalArray(curBlk, arrType, value);
-                addSymbol(name, localArray);
-                addConstArray(name, (ConstArray) value, true);
+                addSymbol(identNode, localArray);
+                addConstArray(identNode, (ConstArray) value, true);
             }
         }
     }
 
     // ConstInitVal → ConstExp | '{' [ ConstInitVal { ',' ConstInitVal } ] '}'
-    private Value visitConstInitVal(VNode constInitValNode, Type type) {
-        if (constInitValNode.getChildrenNodes().size() == 1) {
+    // 数组的初始值只在最外层(outermost)加入常量池, 内层各行只作为中间结果, 由外层一次展开
+    private Value visitConstInitVal(VNode constInitValNode, Type type, boolean outermost) {
+        if (constInitValNode.getChildCount() == 1) {
             // ConstInitVal → ConstExp
             return visitConstExp(constInitValNode.get1stChildNode());
         }
         // ConstInitVal → '{' [ ConstInitVal { ',' ConstInitVal } ] '}'
         // ConstInitVal → '{' '}' 这种情况不会出现
         List<Value> constList = new ArrayList<>();
-        for (VNode node : constInitValNode.getChildrenNodes()) {
+        for (VNode node : constInitValNode.children()) {
             if (node.getNodeType() == NodeType.ConstInitVal) {
-                constList.add(visitConstInitVal(node, ((ArrayType) type).getElementType()));
+                constList.add(visitConstInitVal(node, ((ArrayType) type).getElementType(), false));
             }
         }
         if (!constList.isEmpty()) {
-            return factory.createConstArray(constList);
+            return outermost ? factory.createConstArray(constList) : factory.createInitRow(constList);
         } else {
-            return new ConstArray(type);
+            return factory.getZeroArray(type);
         }
     }
 
@@ -333,12 +421,12 @@ public class Vistor {
     // VarDecl → BType VarDef { ',' VarDef } ';'
     private void visitVarDecl(VNode varDeclNode) {
         VNode typeEndNode = varDeclNode.getChildNode(0).get1stChildNode();
-        TokenType endNodeTokenType = getEndNodeTokenType(typeEndNode);
+        TokenType endNodeTokenType = typeEndNode.getTokenType();
         Type type = null;
         if (endNodeTokenType == TokenType.INTTK) {
             type = IntType.i32;
         }
-        for (VNode node : varDeclNode.getChildrenNodes()) {
+        for (VNode node : varDeclNode.children()) {
             if (node.getNodeType() == NodeType.VarDef) {
                 visitVarDef(node, type);
             }
@@ -347,10 +435,11 @@ public class Vistor {
 
     // VarDef → Ident { '[' ConstExp ']' } | Ident { '[' ConstExp ']' } '=' InitVal
     private void visitVarDef(VNode varDefNode, Type type) {
-        String name = getEndNodeValue(varDefNode.get1stChildNode());
+        VNode identNode = varDefNode.get1stChildNode();
+        String name = identNode.getTokenValue();
         // TODO: 这里没有考虑数组
         List<Integer> dims = new ArrayList<>();
-        for (VNode node : varDefNode.getChildrenNodes()) {
+        for (VNode node : varDefNode.children()) {
             if (node.getNodeType() == NodeType.ConstExp)
                 dims.add(((ConstInt) visitConstExp(node)).getValue());
         }
@@ -367,94 +456,96 @@ public class Vistor {
             type = arrType;
         if (lastChildNode.getNodeType() == NodeType.InitVal) {
             // VarDef → Ident { '[' ConstExp ']' } '=' InitVal
-            Value value = visitInitVal(lastChildNode, type);
+            Value value = visitInitVal(lastChildNode, type, true);
             if (isInGlobal()) {
                 if (arrType == null) {
                     // not array
                     GlobalVar globalVar = factory.createGlobalVar(name, type, false, value);
-                    addSymbol(name, globalVar);
-                    addConst(name, ((ConstInt) value).getValue(), false);
+                    addSymbol(identNode, globalVar);
+                    addConst(identNode, ((ConstInt) value).getValue(), false);
                 } else {
                     // array
                     GlobalVar globalVar = factory.createGlobalVar(name, arrType, false, value);
-                    addSymbol(name, globalVar);
-                    addConstArray(name, (ConstArray) value, false);
+                    addSymbol(identNode, globalVar);
+                    addConstArray(identNode, (ConstArray) value, false);
                 }
             } else {
                 if (arrType == null) {
                     // not array
                     AllocaInst allocaInst = factory.createLocalVar(curBlk, value, type);
-                    addSymbol(name, allocaInst);
+                    addSymbol(identNode, allocaInst);
                     // 不在global中, 此时只做占位用
-                    addConst(name, -1, false);
+                    addConst(identNode, -1, false);
 //                    if (isConstExp) {
-//                        addConst(name, ((ConstInt) value).getValue());
+//                        addConst(identNode, ((ConstInt) value).getValue());
 //                    }
                 } else {
                     // array
                     AllocaInst localArray = factory.createLocalArray(curBlk, arrType, value);
-                    addSymbol(name, localArray);
+                    addSymbol(identNode, localArray);
                     // 不在global中, 此时只做占位用
-                    addConstArray(name, (ConstArray) value, false);
+                    addConstArray(identNode, (ConstArray) value, false);
                 }
             }
         } else {
             // VarDef → Ident { '[' ConstExp ']' }
             if (isInGlobal()) {
                 if (arrType == null) {
-                    GlobalVar globalVar = factory.createGlobalVar(name, type, false, ConstInt.ZERO);
-                    addSymbol(name, globalVar);
+                    GlobalVar globalVar = factory.createGlobalVar(name, type, false, factory.getConstInt(0));
+                    addSymbol(identNode, globalVar);
                 } else {
-                    GlobalVar globalVar = factory.createGlobalVar(name, arrType, false, new ConstArray(arrType));
-                    addSymbol(name, globalVar);
+                    GlobalVar globalVar = factory.createGlobalVar(name, arrType, false, factory.getZeroArray(arrType));
+                    addSymbol(identNode, globalVar);
                 }
             } else {
                 if (arrType == null) {
                     AllocaInst allocaInst = factory.createLocalVar(curBlk, null, type);
-                    addSymbol(name, allocaInst);
+                    addSymbol(identNode, allocaInst);
                 } else {
                     AllocaInst localArray = factory.createLocalArray(curBlk, arrType, null);
-                    addSymbol(name, localArray);
+                    addSymbol(identNode, localArray);
                 }
             }
         }
     }
 
     // InitVal → Exp | '{' [ InitVal { ',' InitVal } ] '}'
-    private Value visitInitVal(VNode initValNode, Type type) {
-        if (initValNode.getChildrenNodes().size() == 1) {
+    // outermost的含义同visitConstInitVal
+    private Value visitInitVal(VNode initValNode, Type type, boolean outermost) {
+        if (initValNode.getChildCount() == 1) {
             // InitVal → Exp
             return visitExp(initValNode.get1stChildNode());
         }
         // InitVal → '{' [ InitVal { ',' InitVal } ] '}'
         // TODOn: 这里没有考虑数组
         List<Value> expList = new ArrayList<>();
-        for (VNode node : initValNode.getChildrenNodes()) {
+        for (VNode node : initValNode.children()) {
             if (node.getNodeType() == NodeType.InitVal) {
-                expList.add(visitInitVal(node, ((ArrayType) type).getElementType()));
+                expList.add(visitInitVal(node, ((ArrayType) type).getElementType(), false));
             }
         }
         if (!expList.isEmpty()) {
-            return factory.createConstArray(expList);
+            return outermost ? factory.createConstArray(expList) : factory.createInitRow(expList);
         } else {
-            return new ConstArray(type);
+            return factory.getZeroArray(type);
         }
     }
 
     // FuncDef → FuncType Ident '(' [FuncFParams] ')' Block
-    private void visitFuncDef(VNode funcDefNode) {
+    // 这里只生成函数签名并加入全局符号表, 函数体由visitFuncBody生成
+    private Function visitFuncDef(VNode funcDefNode) {
         VNode typeEndNode = funcDefNode.getChildNode(0).get1stChildNode();
-        TokenType endNodeTokenType = getEndNodeTokenType(typeEndNode);
+        TokenType endNodeTokenType = typeEndNode.getTokenType();
         Type type = null;
         if (endNodeTokenType == TokenType.INTTK) {
             type = IntType.i32;
         } else if (endNodeTokenType == TokenType.VOIDTK) {
             type = VoidType.voidType;
         }
-        String name = getEndNodeValue(funcDefNode.getChildNode(1));
+        String name = funcDefNode.getChildNode(1).getTokenValue();
         List<Type> paramTypes = new ArrayList<>();
         List<Pair<Type, String>> funcFParams = null;
-        if (funcDefNode.getChildrenNodes().size() == 6) {
+        if (funcDefNode.getChildCount() == 6) {
             // FuncDef → FuncType Ident '(' FuncFParams ')' Block
             VNode funcFParamsNode = funcDefNode.getChildNode(3);
             // 获取形参类型+名称列表
@@ -464,41 +555,50 @@ public class Vistor {
                 paramTypes.add(pair.getFirst());
             }
         }
-        Value.valNumber = -1;
         Function func = factory.createFunction(name, type, paramTypes);
+        addSymbol(funcDefNode.getChildNode(1), func);
+        return func;
+    }
+
+    // MainFuncDef → 'int' 'main' '(' ')' Block
+    private Function visitMainFuncDef(VNode mainFuncDefNode) {
+        // main是保留字, 不会被引用, 无需加入符号表
+        return factory.createFunction("main", IntType.i32, new ArrayList<>());
+    }
+
+    // 生成FuncDef或MainFuncDef的函数体: 形参先存入局部变量, 再生成Block
+    private void visitFuncBody(VNode funcDefNode, Function func) {
+        // 每个函数进入时都要准备一个新的curBlk
         curFunc = func;
-        addSymbol(name, func);
+        // main在所有函数之后定义
+        curFuncOrder = funcOrder.getOrDefault(func, funcOrder.size());
+        if (checking && func.getReturnType() instanceof IntType && !endsWithReturnValue(funcDefNode.getLastChildNode())) {
+            throw new SpeculationFailedException("missing return in " + func.getName());
+        }
         switchBlk();
         pushTbl();
-        for (int i = 0; i < paramTypes.size(); i++) {
-            Argument arg = func.getArgs().get(i);
-            addSymbol(funcFParams.get(i).getSecond(), factory.createLocalVar(curBlk, arg, paramTypes.get(i)));
+        if (funcDefNode.getNodeType() == NodeType.FuncDef && funcDefNode.getChildCount() == 6) {
+            // FuncFParam → BType Ident ...
+            int i = 0;
+            for (VNode node : funcDefNode.getChildNode(3).children()) {
+                if (node.getNodeType() == NodeType.FuncFParam) {
+                    Argument arg = func.getArgs().get(i++);
+                    addSymbol(node.getChildNode(1), factory.createLocalVar(curBlk, arg, arg.getType()));
+                }
+            }
         }
         visitBlock(funcDefNode.getLastChildNode(), null);
         Instruction lastInst = curFunc.getLastInst();
-        if (type instanceof VoidType && !(lastInst instanceof RetInst)) {
+        if (func.getReturnType() instanceof VoidType && !(lastInst instanceof RetInst)) {
             factory.createRetInst(curBlk);
         }
         popTbl();
     }
 
-    // MainFuncDef → 'int' 'main' '(' ')' Block
-    private void visitMainFuncDef(VNode mainFuncDefNode) {
-        Function mainFunc = factory.createFunction("main", IntType.i32, new ArrayList<>());
-        // TODO: 在每个函数进入时都要清空Value.valNumber, 并准备一个新的curBlk
-        Value.valNumber = -1;
-        curFunc = mainFunc;
-        addSymbol("main", mainFunc);
-        switchBlk();
-        pushTbl();
-        visitBlock(mainFuncDefNode.getLastChildNode(), null);
-        popTbl();
-    }
-
     // FuncFParams → FuncFParam { ',' FuncFParam }
     private List<Pair<Type, String>> visitFuncFParams(VNode funcFParamsNode) {
         List<Pair<Type, String>> funcFParams = new ArrayList<>();
-        for (VNode node : funcFParamsNode.getChildrenNodes()) {
+        for (VNode node : funcFParamsNode.children()) {
             if (node.getNodeType() == NodeType.FuncFParam) {
                 funcFParams.add(visitFuncFParam(node));
             }
@@ -509,13 +609,13 @@ public class Vistor {
     private boolean isPairBrackets(VNode l, VNode r) {
         if (l.getNodeType() != NodeType.EndNode || r.getNodeType() != NodeType.EndNode)
             return false;
-        return getEndNodeTokenType(l) == TokenType.LBRACK && getEndNodeTokenType(r) == TokenType.RBRACK;
+        return l.getTokenType() == TokenType.LBRACK && r.getTokenType() == TokenType.RBRACK;
     }
 
     // FuncFParam → BType Ident ['[' ']' { '[' ConstExp ']' }]
     private Pair<Type, String> visitFuncFParam(VNode funcFParamNode) {
         VNode typeEndNode = funcFParamNode.getChildNode(0).get1stChildNode();
-        TokenType endNodeTokenType = getEndNodeTokenType(typeEndNode);
+        TokenType endNodeTokenType = typeEndNode.getTokenType();
         Type type = null;
         if (endNodeTokenType == TokenType.INTTK) {
             type = IntType.i32;
@@ -523,7 +623,7 @@ public class Vistor {
             type = VoidType.voidType;
         }
         List<Integer> dims = new ArrayList<>();
-        for (int i = 0; i < funcFParamNode.getChildrenNodes().size(); i++) {
+        for (int i = 0; i < funcFParamNode.getChildCount(); i++) {
             VNode node = funcFParamNode.getChildNode(i);
             if (node.getNodeType() == NodeType.EndNode && i > 0 && isPairBrackets(funcFParamNode.getChildNode(i - 1), node)) {
                 // 将可能被省略的第一个维度补为-1, 只做占位用, 也只会被添加一次
@@ -537,15 +637,15 @@ public class Vistor {
             arrType = factory.getArrayType(arrType, dims.get(i));
         }
         if (!dims.isEmpty())
-            type = new PointerType(arrType);
-        String name = getEndNodeValue(funcFParamNode.getChildNode(1));
+            type = PointerType.get(arrType);
+        String name = funcFParamNode.getChildNode(1).getTokenValue();
         // TODOn: 这里没有考虑数组
         return new Pair<>(type, name);
     }
 
     // Block → '{' { BlockItem } '}'
     private void visitBlock(VNode blockNode, List<Pair<BrInst, Integer>> forRefillList) {
-        for (VNode node : blockNode.getChildrenNodes()) {
+        for (VNode node : blockNode.children()) {
             if (node.getNodeType() == NodeType.BlockItem) {
                 visitBlockItem(node, forRefillList);
             }
@@ -608,62 +708,85 @@ public class Vistor {
     }
 
     // 'if' '(' Cond ')' Stmt [ 'else' Stmt ]
+    // if分支或else分支本身又是if语句(内嵌的if, else if 链)时不递归, 而是在循环中继续处理内层的if语句,
+    // 各层在分支结束后才能进行的工作记录在栈中, 内层结束后由内向外依次完成, 生成的基本块和指令顺序与递归时相同
     private void visitIfStmt(VNode stmtNode, List<Pair<BrInst, Integer>> forRefillList) {
-        VNode condNode = stmtNode.getChildNode(2);
-        VNode stmtTrueNode = stmtNode.getChildNode(4);
-        List<Pair<BasicBlock, Integer>> ifRefillList = new ArrayList<>();
-        BasicBlock curIfTrueBlk = null, curIfFalseBlk = null, curIfFinalBlk = null, lastTrueBlk = null, lastFalseBlk = null;
-        if (stmtNode.getChildrenNodes().size() > 5) {
-            // 'if' '(' Cond ')' Stmt 'else' Stmt
-            VNode stmtFalseNode = stmtNode.getChildNode(6);
-
+        Deque<IfFrame> ifFrames = new ArrayDeque<>();
+        while (stmtNode != null) {
+            VNode condNode = stmtNode.getChildNode(2);
+            VNode stmtTrueNode = stmtNode.getChildNode(4);
+            List<Pair<BasicBlock, Integer>> ifRefillList = new ArrayList<>();
+            /*
+             * 没有else时:
+             * basicBlk
+             * if (...)
+             *   trueBlk
+             * falseBlk(finalBlk)
+             * -----------------
+             * ...
+             * br i1 <result>, label <trueBlk>, label <falseBlk>
+             * */
             visitCond(condNode, ifRefillList);
 
             switchBlk();
-            curIfTrueBlk = curBlk;
+            ifFrames.push(new IfFrame(stmtNode, curBlk, ifRefillList));
+            if (isIfStmt(stmtTrueNode)) {
+                stmtNode = stmtTrueNode;
+                continue;
+            }
             visitStmt(stmtTrueNode, forRefillList);
-            lastTrueBlk = curBlk;
+            stmtNode = finishIfBranch(ifFrames, forRefillList);
+        }
+    }
 
-            switchBlk();
-            curIfFalseBlk = curBlk;
-            visitStmt(stmtFalseNode, forRefillList);
-            lastFalseBlk = curBlk;
+    /**
+     * 最内层未完成的if语句的当前分支结束后调用: 依次处理各层的else分支, 由内向外完成已经完整的if语句
+     * @return 遇到的下一个内嵌在else分支中的if语句, 应继续处理它; 最外层的if语句已完成时为null
+     */
+    private VNode finishIfBranch(Deque<IfFrame> ifFrames, List<Pair<BrInst, Integer>> forRefillList) {
+        while (!ifFrames.isEmpty()) {
+            IfFrame frame = ifFrames.peek();
+            if (frame.lastTrueBlk == null) {
+                // if分支刚刚结束
+                frame.lastTrueBlk = curBlk;
+                switchBlk();
+                if (frame.stmtNode.getChildCount() <= 5) {
+                    // 'if' '(' Cond ')' Stmt
+                    BasicBlock curIfFinalBlk = curBlk;
+                    // refill trueBlk
+                    factory.createBrInst(frame.lastTrueBlk, curIfFinalBlk);
+                    refillIf(frame.trueBlk, curIfFinalBlk, curIfFinalBlk, frame.ifRefillList);
+                    ifFrames.pop();
+                    continue;
+                }
+                // 'if' '(' Cond ')' Stmt 'else' Stmt
+                frame.falseBlk = curBlk;
+                VNode stmtFalseNode = frame.stmtNode.getChildNode(6);
+                if (isIfStmt(stmtFalseNode)) {
+                    return stmtFalseNode;
+                }
+                visitStmt(stmtFalseNode, forRefillList);
+            }
+            // else分支已经结束
+            BasicBlock lastFalseBlk = curBlk;
 
             switchBlk();
-            curIfFinalBlk = curBlk;
+            BasicBlock curIfFinalBlk = curBlk;
 
             // refill trueBlk
-            factory.createBrInst(lastTrueBlk, curIfFinalBlk);
+            factory.createBrInst(frame.lastTrueBlk, curIfFinalBlk);
 
             // refill falseBlk
             factory.createBrInst(lastFalseBlk, curIfFinalBlk);
-        } else {
-            // 'if' '(' Cond ')' Stmt
-            /*
-            * basicBlk
-            * if (...)
-            *   trueBlk
-            * falseBlk(finalBlk)
-            * -----------------
-            * ...
-            * br i1 <result>, label <trueBlk>, label <falseBlk>
-            * */
-            visitCond(condNode, ifRefillList);
-
-            switchBlk();
-            curIfTrueBlk = curBlk;
-            visitStmt(stmtTrueNode, forRefillList);
-            lastTrueBlk = curBlk;
-
-            switchBlk();
-            curIfFinalBlk = curBlk;
-
-            curIfFalseBlk = curIfFinalBlk;
-
-            // refill trueBlk
-            factory.createBrInst(lastTrueBlk, curIfFinalBlk);
+            refillIf(frame.trueBlk, frame.falseBlk, curIfFinalBlk, frame.ifRefillList);
+            ifFrames.pop();
         }
-        refillIf(curIfTrueBlk, curIfFalseBlk, curIfFinalBlk, ifRefillList);
+        return null;
+    }
+
+    private boolean isIfStmt(VNode stmtNode) {
+        VNode firstChildNode = stmtNode.get1stChildNode();
+        return firstChildNode.getNodeType() == NodeType.EndNode && firstChildNode.getTokenType() == TokenType.IFTK;
     }
 
     private void refillFor(BasicBlock continueBlk, BasicBlock finalBlk, List<Pair<BrInst, Integer>> forRefillList) {
@@ -684,9 +807,9 @@ public class Vistor {
 //        VNode forStmt1Node, condNode, forStmt2Node, forBlockNode;
         VNode[] nodes = new VNode[4];
         int idx = 0;
-        for (VNode node : stmtNode.getChildrenNodes()) {
+        for (VNode node : stmtNode.children()) {
             if (node.getNodeType() == NodeType.EndNode) {
-                TokenType type = getEndNodeTokenType(node);
+                TokenType type = node.getTokenType();
                 if (type == TokenType.SEMICN || type == TokenType.RPARENT) {
                     idx++;
                 }
@@ -783,16 +906,26 @@ public class Vistor {
     private void visitPrintfStmt(VNode stmtNode) {
         // 'printf''('FormatString{','Exp}')'';'
         // formatString: "abc%d\n"
-        String formatString = getEndNodeValue(stmtNode.getChildNode(2));
+        String formatString = stmtNode.getChildNode(2).getTokenValue();
         // 去掉首尾的双引号
         formatString = formatString.substring(1, formatString.length() - 1);
         List<Value> exps = new ArrayList<>();
-        for (VNode node : stmtNode.getChildrenNodes()) {
+        for (VNode node : stmtNode.children()) {
             if (node.getNodeType() == NodeType.Exp) {
                 Value value = visitExp(node);
                 exps.add(value);
             }
         }
+        if (checking) {
+            // l, 与ErrorHandler一致只统计%d
+            int modelCnt = 0;
+            for (int i = formatString.indexOf("%d"); i >= 0; i = formatString.indexOf("%d", i + 2)) {
+                modelCnt++;
+            }
+            if (modelCnt != exps.size()) {
+                throw new SpeculationFailedException("printf argument count mismatch");
+            }
+        }
         int j = 0;
         Value value = null;
         List<Value> args = new ArrayList<>();
@@ -805,15 +938,15 @@ public class Vistor {
                     c = formatString.charAt(i);
                     switch (c) {
                         case 'n' -> {
-                            value = new ConstInt(IntType.i32, 10);
+                            value = factory.getConstInt(10);
                             args.add(value);
                         }
                         case '\\' -> {
-                            value = new ConstInt(IntType.i32, 92);
+                            value = factory.getConstInt(92);
                             args.add(value);
                         }
                     }
-                    factory.createCallInst(curBlk, (Function) findSym("putch"), args);
+                    factory.createCallInst(curBlk, putchFunc, args);
                 }
                 case '%' -> {
                     ++i;
@@ -822,19 +955,19 @@ public class Vistor {
                         case 'd' -> {
                             value = exps.get(j++);
                             args.add(value);
-                            factory.createCallInst(curBlk, (Function) findSym("putint"), args);
+                            factory.createCallInst(curBlk, putintFunc, args);
                         }
                         case 'c' -> {
                             value = exps.get(j++);
                             args.add(value);
-                            factory.createCallInst(curBlk, (Function) findSym("putch"), args);
+                            factory.createCallInst(curBlk, putchFunc, args);
                         }
                     }
                 }
                 default -> {
-                    value = new ConstInt(IntType.i32, c);
+                    value = factory.getConstInt(c);
                     args.add(value);
-                    factory.createCallInst(curBlk, (Function) findSym("putch"), args);
+                    factory.createCallInst(curBlk, putchFunc, args);
                 }
             }
         }
@@ -853,7 +986,7 @@ public class Vistor {
         VNode firstChildNode = stmtNode.get1stChildNode();
         switch (firstChildNode.getNodeType()) {
             case LVal -> {
-                if (stmtNode.getChildrenNodes().size() == 4) {
+                if (stmtNode.getChildCount() == 4) {
                     // LVal '=' Exp ';'
                     Value lVal = visitLVal(firstChildNode);
                     Value expValue = visitExp(stmtNode.getChildNode(2));
@@ -861,8 +994,7 @@ public class Vistor {
                 } else {
                     // LVal '=' 'getint''('')'';'
                     Value lVal = visitLVal(firstChildNode);
-                    Function getint = (Function) findSym("getint");
-                    CallInst callInst = factory.createCallInst(curBlk, getint, new ArrayList<>());
+                    CallInst callInst = factory.createCallInst(curBlk, getintFunc, new ArrayList<>());
                     factory.createStoreInst(curBlk, lVal, callInst);
                 }
             }
@@ -873,26 +1005,38 @@ public class Vistor {
                 popTbl();
             }
             case EndNode -> {
-                TokenType tokenType = getEndNodeTokenType(firstChildNode);
+                TokenType tokenType = firstChildNode.getTokenType();
                 switch (tokenType) {
                     case IFTK -> visitIfStmt(stmtNode, forRefillList);
                     case FORTK -> visitFor(stmtNode);
                     case BREAKTK -> {
+                        if (checking && inFor == 0) {
+                            // m
+                            throw new SpeculationFailedException("break outside loop");
+                        }
                         if (inFor > 0) {
-                            BrInst brInst = factory.createBrInst(curBlk, BasicBlock.PLACE_HOLDER);
+                            BrInst brInst = factory.createBrInst(curBlk, placeHolder);
                             forRefillList.add(new Pair<>(brInst, 0));
                             switchBlk();
                         }
                     }
                     case CONTINUETK -> {
+                        if (checking && inFor == 0) {
+                            // m
+                            throw new SpeculationFailedException("continue outside loop");
+                        }
                         if (inFor > 0) {
-                            BrInst brInst = factory.createBrInst(curBlk, BasicBlock.PLACE_HOLDER);
+                            BrInst brInst = factory.createBrInst(curBlk, placeHolder);
                             forRefillList.add(new Pair<>(brInst, 1));
                             switchBlk();
                         }
                     }
                     case RETURNTK -> {
-                        if (stmtNode.getChildrenNodes().size() == 3) {
+                        if (checking && stmtNode.getChildCount() == 3 && curFunc.getReturnType() instanceof VoidType) {
+                            // f
+                            throw new SpeculationFailedException("return value in void function");
+                        }
+                        if (stmtNode.getChildCount() == 3) {
                             factory.createRetInst(curBlk, visitExp(stmtNode.getChildNode(1)));
                             switchBlk();
                         } else {
@@ -926,85 +1070,124 @@ public class Vistor {
     }
 
     // AddExp → MulExp | AddExp ('+' | '−') MulExp
+    // MulExp → UnaryExp | MulExp ('*' | '/' | '%') UnaryExp
+    // UnaryExp → UnaryOp UnaryExp
+    // PrimaryExp → '(' Exp ')'
+    // AddExp和MulExp平铺存放为 操作数 {运算符 操作数}, 只有一个操作数时不生成节点
+    // 以显式栈后序求值, 括号, 一元运算符嵌套再深也不递归, 求值和生成指令的顺序与逐层递归时相同
     private Value visitAddExp(VNode addExpNode) {
-        if (addExpNode.getChildrenNodes().size() == 1) {
-            return visitMulExp(addExpNode.get1stChildNode());
+        Deque<ExpFrame> frames = new ArrayDeque<>();
+        VNode node = addExpNode;
+        while (true) {
+            // 向下找到第一个不再嵌套的操作数, 沿途的运算压栈
+            while (true) {
+                NodeType nodeType = node.getNodeType();
+                if (nodeType == NodeType.AddExp || nodeType == NodeType.MulExp) {
+                    VNode firstChildNode = node.get1stChildNode();
+                    frames.push(new ExpFrame(null, firstChildNode.getNextSibling()));
+                    node = firstChildNode;
+                    continue;
+                }
+                VNode firstChildNode = node.get1stChildNode();
+                if (firstChildNode.getNodeType() == NodeType.UnaryOp) {
+                    // UnaryExp → UnaryOp UnaryExp
+                    frames.push(new ExpFrame(firstChildNode, null));
+                    node = node.getChildNode(1);
+                } else if (firstChildNode.getNodeType() == NodeType.PrimaryExp && firstChildNode.getChildCount() > 1) {
+                    // PrimaryExp → '(' Exp ')'
+                    node = firstChildNode.getChildNode(1).get1stChildNode();
+                } else {
+                    break;
+                }
+            }
+            Value value = visitUnaryExp(node);
+            // 向上将值交给等待它的运算, 直到某个二元运算还有下一个操作数
+            node = null;
+            while (node == null) {
+                ExpFrame frame = frames.peek();
+                if (frame == null) {
+                    return value;
+                }
+                if (frame.isUnary) {
+                    frames.pop();
+                    value = calcUnary(frame.opNode, value);
+                    continue;
+                }
+                frame.value = frame.opNode == null ? value : calcBinary(frame.opNode, frame.value, value);
+                if (frame.nextOpNode == null) {
+                    frames.pop();
+                    value = frame.value;
+                } else {
+                    frame.opNode = frame.nextOpNode;
+                    node = frame.opNode.getNextSibling();
+                    frame.nextOpNode = node.getNextSibling();
+                }
+            }
         }
-        Value addExpValue = visitAddExp(addExpNode.get1stChildNode());
-        Value mulExpValue = visitMulExp(addExpNode.getChildNode(2));
-        VNode opNode = addExpNode.getChildNode(1);
-        TokenType tokenType = getEndNodeTokenType(opNode);
+    }
+
+    // AddExp和MulExp中的二元运算, 两个操作数都是常量时直接计算
+    private Value calcBinary(VNode opNode, Value lValue, Value rValue) {
+        TokenType tokenType = opNode.getTokenType();
         Operator op = null;
         switch (tokenType) {
             case PLUS -> op = Operator.Add;
             case MINU -> op = Operator.Sub;
+            case MULT -> op = Operator.Mul;
+            case DIV -> op = Operator.Div;
+            case MOD -> op = Operator.Mod;
         }
-        boolean isConst = addExpValue instanceof ConstInt && mulExpValue instanceof ConstInt;
-        return isConst ? calc(op, ((ConstInt) addExpValue).getValue(), ((ConstInt) mulExpValue).getValue()) : factory.createBinaryInst(curBlk, op, addExpValue, mulExpValue);
+        boolean isConst = lValue instanceof ConstInt && rValue instanceof ConstInt;
+        return isConst ? calc(op, ((ConstInt) lValue).getValue(), ((ConstInt) rValue).getValue()) : factory.createBinaryInst(curBlk, op, lValue, rValue);
     }
 
-    // MulExp → UnaryExp | MulExp ('*' | '/' | '%') UnaryExp
-    private Value visitMulExp(VNode mulExpNode) {
-        if (mulExpNode.getChildrenNodes().size() == 1) {
-            return visitUnaryExp(mulExpNode.get1stChildNode());
-        }
-        Value mulExpValue = visitMulExp(mulExpNode.get1stChildNode());
-        Value unaryExpValue = visitUnaryExp(mulExpNode.getChildNode(2));
-        VNode opNode = mulExpNode.getChildNode(1);
-        TokenType tokenType = getEndNodeTokenType(opNode);
+    // UnaryOp UnaryExp, 操作数是常量时直接计算
+    private Value calcUnary(VNode unaryOpNode, Value value) {
+        TokenType tokenType = unaryOpNode.get1stChildNode().getTokenType();
         Operator op = null;
         switch (tokenType) {
-            case MULT -> op = Operator.Mul;
-            case DIV -> op = Operator.Div;
-            case MOD -> op = Operator.Mod;
+            case PLUS -> op = Operator.Add;
+            case MINU -> op = Operator.Sub;
+            case NOT -> {
+                op = Operator.Not;
+                return value instanceof ConstInt ? calc(op, ((ConstInt) value).getValue()) : factory.createNotInst(curBlk, value);
+            }
+        }
+        if (value instanceof ConstInt) {
+            assert op != null;
+            return calc(op, 0, ((ConstInt) value).getValue());
+        } else {
+            return factory.createBinaryInst(curBlk, op, factory.getConstInt(0), value);
         }
-        boolean isConst = unaryExpValue instanceof ConstInt && mulExpValue instanceof ConstInt;
-        return isConst ? calc(op, ((ConstInt) mulExpValue).getValue(), ((ConstInt) unaryExpValue).getValue()) : factory.createBinaryInst(curBlk, op, mulExpValue, unaryExpValue);
     }
 
-    // UnaryExp → PrimaryExp | Ident '(' [FuncRParams] ')' | UnaryOp UnaryExp
+    // UnaryExp → PrimaryExp | Ident '(' [FuncRParams] ')'
+    // UnaryOp UnaryExp 由visitAddExp展开求值
     private Value visitUnaryExp(VNode unaryExpNode) {
-        if (unaryExpNode.getChildrenNodes().size() == 1) {
+        if (unaryExpNode.getChildCount() == 1) {
             // UnaryExp → PrimaryExp
             return visitPrimaryExp(unaryExpNode.get1stChildNode());
         }
-        if (unaryExpNode.getChildrenNodes().size() == 2) {
-            // UnaryExp → UnaryOp UnaryExp
-            VNode unaryOpNode = unaryExpNode.get1stChildNode();
-            TokenType tokenType = getEndNodeTokenType(unaryOpNode.get1stChildNode());
-            Operator op = null;
-            Value value = visitUnaryExp(unaryExpNode.getChildNode(1));
-            switch (tokenType) {
-                case PLUS -> op = Operator.Add;
-                case MINU -> op = Operator.Sub;
-                case NOT -> {
-                    op = Operator.Not;
-                    return value instanceof ConstInt ? calc(op, ((ConstInt) value).getValue()) : factory.createNotInst(curBlk, value);
-                }
-            }
-            if (value instanceof ConstInt) {
-                assert op != null;
-                return calc(op, 0, ((ConstInt) value).getValue());
-            } else {
-                return factory.createBinaryInst(curBlk, op, ConstInt.ZERO, value);
-            }
-        }
         // UnaryExp → Ident '(' [FuncRParams] ')'
-        String funcName = getEndNodeValue(unaryExpNode.get1stChildNode());
-        Function func = (Function) findSym(funcName);
+        VNode identNode = unaryExpNode.get1stChildNode();
+        Value sym = findSym(identNode.getTokenIdent());
         List<Value> funcRParams = new ArrayList<>();
-        if (unaryExpNode.getChildrenNodes().size() == 4) {
+        VNode funcRParamsNode = null;
+        if (unaryExpNode.getChildCount() == 4) {
             // UnaryExp → Ident '(' FuncRParams ')'
-            VNode funcRParamsNode = unaryExpNode.getChildNode(2);
+            funcRParamsNode = unaryExpNode.getChildNode(2);
             funcRParams.addAll(visitFuncRParams(funcRParamsNode));
         }
-        return factory.createCallInst(curBlk, func, funcRParams);
+        if (checking) {
+            checkCall(identNode.getTokenValue(), sym, funcRParamsNode, funcRParams);
+        }
+        return factory.createCallInst(curBlk, (Function) sym, funcRParams);
     }
 
     // FuncRParams → Exp { ',' Exp }
     private List<Value> visitFuncRParams(VNode funcRParamsNode) {
         List<Value> funcRParams = new ArrayList<>();
-        for (VNode node : funcRParamsNode.getChildrenNodes()) {
+        for (VNode node : funcRParamsNode.children()) {
             if (node.getNodeType() == NodeType.Exp) {
                 funcRParams.add(visitExp(node));
             }
@@ -1012,23 +1195,14 @@ public class Vistor {
         return funcRParams;
     }
 
-    // PrimaryExp → '(' Exp ')' | LVal | Number
+    // PrimaryExp → LVal | Number
+    // '(' Exp ')' 由visitAddExp展开求值
     private Value visitPrimaryExp(VNode primaryExpNode) {
-        if (primaryExpNode.getChildrenNodes().size() == 1) {
-            // PrimaryExp → LVal | Number
-            VNode firstChildNode = primaryExpNode.get1stChildNode();
-            switch (firstChildNode.getNodeType()) {
-                case LVal -> {
-                    return visitRVal(firstChildNode);
-                }
-                case Number -> {
-                    String numberStr = getEndNodeValue(firstChildNode.get1stChildNode());
-                    return new ConstInt(IntType.i32, Integer.parseInt(numberStr));
-                }
-            }
+        VNode firstChildNode = primaryExpNode.get1stChildNode();
+        if (firstChildNode.getNodeType() == NodeType.LVal) {
+            return visitRVal(firstChildNode);
         }
-        // PrimaryExp → '(' Exp ')'
-        return visitExp(primaryExpNode.getChildNode(1));
+        return factory.getConstInt(firstChildNode.get1stChildNode().getTokenNumValue());
     }
 
     private boolean isIdxConst(List<Value> idxList) {
@@ -1044,22 +1218,26 @@ public class Vistor {
     // 涉及到访问全局/局部变量/数组, 实参, 访问形参
     // 如果作为右值访问到了一个常量普通变量或者常量数组的原子成员, 都将其替换为对应的数值
     private Value visitRVal(VNode rValNode) {
-        String name = getEndNodeValue(rValNode.get1stChildNode());
-        if (rValNode.getChildrenNodes().size() == 1) {
+        VNode identNode = rValNode.get1stChildNode();
+        int ident = identNode.getTokenIdent();
+        if (checking) {
+            checkVarRef(identNode, false);
+        }
+        if (rValNode.getChildCount() == 1) {
             // RVal → Ident
             // 可能是普通变量, 也可能是数组名
             // findConst可能找到局部/全局const变量或者全局的任意普通变量
-            Pair<Boolean, Integer> aConst = findConst(name);
+            Pair<Boolean, Integer> aConst = findConst(ident);
             if (isInGlobal() || (aConst != null && aConst.getFirst()))
-                return new ConstInt(IntType.i32, aConst.getSecond());
-            Value addr = findSym(name);
+                return factory.getConstInt(aConst.getSecond());
+            Value addr = findSym(ident);
             // 普通变量: Load, 数组名(作实参): GEP获取第一层的指针
             Type targetType = ((PointerType) addr.getType()).getTargetType();
             Value retVal = null;
             if (targetType instanceof ArrayType) {
                 List<Value> indexList = new ArrayList<>();
-                indexList.add(ConstInt.ZERO);
-                indexList.add(ConstInt.ZERO);
+                indexList.add(factory.getConstInt(0));
+                indexList.add(factory.getConstInt(0));
                 retVal = factory.createGEPInst(curBlk, addr, indexList);
             } else {
                 retVal = factory.createLoadInst(curBlk, addr);
@@ -1069,17 +1247,22 @@ public class Vistor {
         // RVal → Ident {'[' Exp ']'}
         // 整体可能是数组元素: 访问形参或普通数组, 也可能是数组元素的地址: 只可能是函数实参
         // Ident可能访问的是全局/局部数组: 即指针指向数组, 也可能是函数形参: 即指针指向指针
-        Pair<Boolean, ConstArray> constArray = findConstArray(name);
-        Value addr = findSym(name);
+        Pair<Boolean, ConstArray> constArray = findConstArray(ident);
+        Value addr = findSym(ident);
         List<Value> idxList = new ArrayList<>();
-        for (VNode expNode : rValNode.getChildrenNodes()) {
+        for (VNode expNode : rValNode.children()) {
             if (expNode.getNodeType() == NodeType.Exp) {
                 idxList.add(visitExp(expNode));
             }
         }
         // 当前处于全局变量定义区, 或者对应的数组为const, 且索引也能求出值, 就可以将其替换为常量
         if (isInGlobal() || (constArray != null && constArray.getFirst() && isIdxConst(idxList))) {
-            return constArray.getSecond().getElement(idxList);
+            ConstArray array = constArray.getSecond();
+            if (!array.isFlat()) {
+                return array.getElement(idxList, factory.getConstPool());
+            }
+            int index = array.getFlatIndex(idxList);
+            return index < 0 ? null : factory.getConstInt(array.getFlatInt(index));
         }
         Type type = addr.getType(), targetType = ((PointerType) type).getTargetType();
         if (targetType instanceof PointerType) {
@@ -1087,15 +1270,15 @@ public class Vistor {
             addr = factory.createLoadInst(curBlk, addr);
         } else {
             // Ident对应的是数组
-            idxList.add(0, ConstInt.ZERO);
+            idxList.add(0, factory.getConstInt(0));
         }
         addr = factory.createGEPInst(curBlk, addr, idxList);
         targetType = ((PointerType) addr.getType()).getTargetType();
         if (targetType instanceof ArrayType) {
             // 整体为数组, 作为右值要将其转化为内部第一个"元素"的地址
             ArrayList<Value> list = new ArrayList<>();
-            list.add(ConstInt.ZERO);
-            list.add(ConstInt.ZERO);
+            list.add(factory.getConstInt(0));
+            list.add(factory.getConstInt(0));
             return factory.createGEPInst(curBlk, addr, list);
         } else {
             // 整体为普通元素, 直接Load获取值就行
@@ -1105,18 +1288,22 @@ public class Vistor {
 
     // LVal → Ident {'[' Exp ']'}
     private Value visitLVal(VNode lValNode) {
-        String name = getEndNodeValue(lValNode.get1stChildNode());
-        if (lValNode.getChildrenNodes().size() == 1) {
+        VNode identNode = lValNode.get1stChildNode();
+        int ident = identNode.getTokenIdent();
+        if (checking) {
+            checkVarRef(identNode, true);
+        }
+        if (lValNode.getChildCount() == 1) {
             // LVal → Ident, 由于是左值, 则只可能是普通变量
-            /*Integer aConst = findConst(name);
+            /*Integer aConst = findConst(ident);
             if (aConst != null)
                 return new ConstInt(IntType.i32, aConst);*/
-            return findSym(name);
+            return findSym(ident);
         }
         // LVal → Ident {'[' Exp ']'}, 由于是左值, 则Exp数量一定匹配原数组的维度
-        Value sym = findSym(name);
+        Value sym = findSym(ident);
         List<Value> idxList = new ArrayList<>();
-        for (VNode expNode : lValNode.getChildrenNodes()) {
+        for (VNode expNode : lValNode.children()) {
             if (expNode.getNodeType() == NodeType.Exp) {
                 idxList.add(visitExp(expNode));
             }
@@ -1127,88 +1314,154 @@ public class Vistor {
             sym = factory.createLoadInst(curBlk, sym);
         } else {
             // a[2][2]
-            idxList.add(0, ConstInt.ZERO);
+            idxList.add(0, factory.getConstInt(0));
         }
         return factory.createGEPInst(curBlk, sym, idxList);
     }
 
     // RelExp → AddExp | RelExp ('<' | '>' | '<=' | '>=') AddExp
+    // 平铺存放为 AddExp {('<' | '>' | '<=' | '>=') AddExp}, 只有一个AddExp时不生成RelExp节点
     private Value visitRelExp(VNode relExpNode) {
-        if (relExpNode.getChildrenNodes().size() == 1) {
-            return visitAddExp(relExpNode.get1stChildNode());
-        }
-        Value relExpValue = visitRelExp(relExpNode.get1stChildNode());
-        Value addExpValue = visitAddExp(relExpNode.getChildNode(2));
-        VNode opNode = relExpNode.getChildNode(1);
-        TokenType tokenType = getEndNodeTokenType(opNode);
-        Operator op = null;
-        switch (tokenType) {
-            case LSS -> op = Operator.Lt;
-            case LEQ -> op = Operator.Le;
-            case GRE -> op = Operator.Gt;
-            case GEQ -> op = Operator.Ge;
+        if (relExpNode.getNodeType() != NodeType.RelExp) {
+            return visitAddExp(relExpNode);
+        }
+        VNode addExpNode = relExpNode.get1stChildNode();
+        Value relExpValue = visitAddExp(addExpNode);
+        for (VNode opNode = addExpNode.getNextSibling(); opNode != null; opNode = addExpNode.getNextSibling()) {
+            addExpNode = opNode.getNextSibling();
+            Value addExpValue = visitAddExp(addExpNode);
+            TokenType tokenType = opNode.getTokenType();
+            Operator op = null;
+            switch (tokenType) {
+                case LSS -> op = Operator.Lt;
+                case LEQ -> op = Operator.Le;
+                case GRE -> op = Operator.Gt;
+                case GEQ -> op = Operator.Ge;
+            }
+            relExpValue = factory.createIcmpInst(curBlk, op, relExpValue, addExpValue);
         }
-        return factory.createIcmpInst(curBlk, op, relExpValue, addExpValue);
+        return relExpValue;
     }
 
     // EqExp → RelExp | EqExp ('==' | '!=') RelExp
+    // 平铺存放为 RelExp {('==' | '!=') RelExp}, 只有一个RelExp时不生成EqExp节点
     private Value visitEqExp(VNode eqExpNode) {
-        if (eqExpNode.getChildrenNodes().size() == 1) {
-            return visitRelExp(eqExpNode.get1stChildNode());
-        }
-        Value eqExpValue = visitEqExp(eqExpNode.get1stChildNode());
-        Value relExpValue = visitRelExp(eqExpNode.getChildNode(2));
-        VNode opNode = eqExpNode.getChildNode(1);
-        TokenType tokenType = getEndNodeTokenType(opNode);
-        Operator op = null;
-        switch (tokenType) {
-            case EQL -> op = Operator.Eq;
-            case NEQ -> op = Operator.Ne;
+        if (eqExpNode.getNodeType() != NodeType.EqExp) {
+            return visitRelExp(eqExpNode);
+        }
+        VNode relExpNode = eqExpNode.get1stChildNode();
+        Value eqExpValue = visitRelExp(relExpNode);
+        for (VNode opNode = relExpNode.getNextSibling(); opNode != null; opNode = relExpNode.getNextSibling()) {
+            relExpNode = opNode.getNextSibling();
+            Value relExpValue = visitRelExp(relExpNode);
+            TokenType tokenType = opNode.getTokenType();
+            Operator op = null;
+            switch (tokenType) {
+                case EQL -> op = Operator.Eq;
+                case NEQ -> op = Operator.Ne;
+            }
+            eqExpValue = factory.createIcmpInst(curBlk, op, eqExpValue, relExpValue);
         }
-        return factory.createIcmpInst(curBlk, op, eqExpValue, relExpValue);
+        return eqExpValue;
     }
 
     // LAndExp → EqExp | LAndExp '&&' EqExp
+    // 平铺存放为 EqExp {'&&' EqExp}, 只有一个EqExp时不生成LAndExp节点
     private Value visitLAndExp(VNode lAndExpNode, List<Pair<BasicBlock, Integer>> ifRefillList) {
-        // LAndExp → EqExp
-        if (lAndExpNode.getChildrenNodes().size() == 1) {
-            Value res = visitEqExp(lAndExpNode.get1stChildNode());
-            if (!(res instanceof BrInst)) {
-                res = factory.createBrInst(curBlk, res, BasicBlock.PLACE_HOLDER, BasicBlock.PLACE_HOLDER);
-            }
+        VNode eqExpNode = lAndExpNode.getNodeType() == NodeType.LAndExp ? lAndExpNode.get1stChildNode() : lAndExpNode;
+        Value res = visitEqExp(eqExpNode);
+        if (!(res instanceof BrInst)) {
+            res = factory.createBrInst(curBlk, res, placeHolder, placeHolder);
+        }
+        if (eqExpNode == lAndExpNode) {
             return res;
         }
-        // LAndExp → LAndExp '&&' EqExp
-        visitLAndExp(lAndExpNode.get1stChildNode(), ifRefillList);
-        ifRefillList.add(new Pair<>(null, 0));
-        switchBlk();
-        ifRefillList.add(new Pair<>(curBlk, -1));
-        Value res = visitEqExp(lAndExpNode.getChildNode(2));
-        if (!(res instanceof BrInst)) {
-            res = factory.createBrInst(curBlk, res, BasicBlock.PLACE_HOLDER, BasicBlock.PLACE_HOLDER);
+        // 此后每个 '&&' EqExp 都在新的基本块中求值
+        for (VNode opNode = eqExpNode.getNextSibling(); opNode != null; opNode = eqExpNode.getNextSibling()) {
+            eqExpNode = opNode.getNextSibling();
+            ifRefillList.add(new Pair<>(null, 0));
+            switchBlk();
+            ifRefillList.add(new Pair<>(curBlk, -1));
+            res = visitEqExp(eqExpNode);
+            if (!(res instanceof BrInst)) {
+                res = factory.createBrInst(curBlk, res, placeHolder, placeHolder);
+            }
         }
         return res;
     }
 
     // LOrExp → LAndExp | LOrExp '||' LAndExp
+    // 平铺存放为 LAndExp {'||' LAndExp}, 只有一个LAndExp时不生成LOrExp节点
     private Value visitLOrExp(VNode lOrExpNode, List<Pair<BasicBlock, Integer>> ifRefillList) {
-        // LOrExp → LAndExp
-        if (lOrExpNode.getChildrenNodes().size() == 1) {
-            Value res = visitLAndExp(lOrExpNode.get1stChildNode(), ifRefillList);
-            if (!(res instanceof BrInst)) {
-                res = factory.createBrInst(curBlk, res, BasicBlock.PLACE_HOLDER, BasicBlock.PLACE_HOLDER);
-            }
+        VNode lAndExpNode = lOrExpNode.getNodeType() == NodeType.LOrExp ? lOrExpNode.get1stChildNode() : lOrExpNode;
+        Value res = visitLAndExp(lAndExpNode, ifRefillList);
+        if (!(res instanceof BrInst)) {
+            res = factory.createBrInst(curBlk, res, placeHolder, placeHolder);
+        }
+        if (lAndExpNode == lOrExpNode) {
             return res;
         }
-        // LOrExp → LOrExp '||' LAndExp
-        visitLOrExp(lOrExpNode.get1stChildNode(), ifRefillList);
-        ifRefillList.add(new Pair<>(null, 1));
-        switchBlk();
-        ifRefillList.add(new Pair<>(curBlk, -1));
-        Value res = visitLAndExp(lOrExpNode.getChildNode(2), ifRefillList);
-        if (!(res instanceof BrInst)) {
-            res = factory.createBrInst(curBlk, res, BasicBlock.PLACE_HOLDER, BasicBlock.PLACE_HOLDER);
+        // 此后每个 '||' LAndExp 都在新的基本块中求值
+        for (VNode opNode = lAndExpNode.getNextSibling(); opNode != null; opNode = lAndExpNode.getNextSibling()) {
+            lAndExpNode = opNode.getNextSibling();
+            ifRefillList.add(new Pair<>(null, 1));
+            switchBlk();
+            ifRefillList.add(new Pair<>(curBlk, -1));
+            res = visitLAndExp(lAndExpNode, ifRefillList);
+            if (!(res instanceof BrInst)) {
+                res = factory.createBrInst(curBlk, res, placeHolder, placeHolder);
+            }
         }
         return res;
     }
+
+    /**
+     * 符号表中的一项: 变量(或函数)以及作为常量时的值
+     * 常量值与变量记录在同一项中, 内层的同名变量会将其一并遮蔽
+     */
+    private static class Symbol {
+        private final Value value;
+        private Pair<Boolean, Integer> aConst;
+        private Pair<Boolean, ConstArray> constArray;
+
+        private Symbol(Value value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * visitIfStmt中尚未完成的一层if语句
+     * lastTrueBlk在if分支结束后, falseBlk在进入else分支时才确定
+     */
+    private static class IfFrame {
+        private final VNode stmtNode;
+        private final BasicBlock trueBlk;
+        private final List<Pair<BasicBlock, Integer>> ifRefillList;
+        private BasicBlock lastTrueBlk;
+        private BasicBlock falseBlk;
+
+        private IfFrame(VNode stmtNode, BasicBlock trueBlk, List<Pair<BasicBlock, Integer>> ifRefillList) {
+            this.stmtNode = stmtNode;
+            this.trueBlk = trueBlk;
+            this.ifRefillList = ifRefillList;
+        }
+    }
+
+    /**
+     * visitAddExp中等待操作数的运算
+     * 一元运算: opNode为UnaryOp节点
+     * 二元运算: opNode为正在求值的右操作数之前的运算符(正在求值第一个操作数时为null), nextOpNode为下一个运算符
+     */
+    private static class ExpFrame {
+        private final boolean isUnary;
+        private VNode opNode;
+        private VNode nextOpNode;
+        private Value value;
+
+        private ExpFrame(VNode opNode, VNode nextOpNode) {
+            this.isUnary = opNode != null;
+            this.opNode = opNode;
+            this.nextOpNode = nextOpNode;
+        }
+    }
 }
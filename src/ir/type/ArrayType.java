@@ -1,23 +1,28 @@
 package ir.type;
 
-import ir.value.ConstInt;
+import ir.ConstPool;
 import ir.value.Value;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ArrayType implements Type {
+    private static final Map<Key, ArrayType> CACHE = new ConcurrentHashMap<>();
     private final Type elementType;
     private final int length;
+    // 展开后的元素个数, 类型不可变, 构造时即可求出
+    private final int capacity;
 
-    public ArrayType(Type elementType) {
-        this.elementType = elementType;
-        this.length = 0;
+    private ArrayType(Key key) {
+        this.elementType = key.elementType;
+        this.length = key.length;
+        this.capacity = elementType instanceof ArrayType arrayType ? length * arrayType.capacity : length;
     }
 
-    public ArrayType(Type elementType, int length) {
-        this.elementType = elementType;
-        this.length = length;
+    public static ArrayType get(Type elementType, int length) {
+        return CACHE.computeIfAbsent(new Key(elementType, length), ArrayType::new);
     }
 
     public Type getElementType() {
@@ -25,7 +30,7 @@ public class ArrayType implements Type {
     }
 
     public boolean is1DArray() {
-        return elementType instanceof IntType && ((IntType) elementType).isI32();
+        return elementType == IntType.i32;
     }
 
     public boolean isHDArray() {
@@ -33,7 +38,7 @@ public class ArrayType implements Type {
     }
 
     public boolean isString() {
-        return elementType instanceof IntType && ((IntType) elementType).isI8();
+        return elementType == IntType.i8;
     }
 
     public int getLength() {
@@ -49,22 +54,18 @@ public class ArrayType implements Type {
     }
 
     public int getCapacity() {
-        int capacity = 1;
-        for (int dimension : getDimensions()) {
-            capacity *= dimension;
-        }
         return capacity;
     }
 
-    public List<Value> offset2Index(int offset) {
+    public List<Value> offset2Index(int offset, ConstPool pool) {
         List<Value> index = new ArrayList<>();
         Type type = this;
         while (type instanceof ArrayType) {
-            index.add(new ConstInt(IntType.i32, offset / ((ArrayType) type).getCapacity()));
+            index.add(pool.getConstInt(offset / ((ArrayType) type).getCapacity()));
             offset %= ((ArrayType) type).getCapacity();
             type = ((ArrayType) type).getElementType();
         }
-        index.add(new ConstInt(IntType.i32, offset));
+        index.add(pool.getConstInt(offset));
         return index;
     }
 
@@ -88,4 +89,7 @@ public class ArrayType implements Type {
         return "[" + length + " x " + elementType.toString() + "]";
     }
 
+    // 元素类型已经唯一化, 按引用比较即可
+    private record Key(Type elementType, int length) {}
+
 }
\ No newline at end of file
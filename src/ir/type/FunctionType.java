@@ -1,31 +1,37 @@
 package ir.type;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FunctionType implements Type {
-    private Type returnType;
-    private List<Type> paramTypes;
+    private static final Map<Key, FunctionType> CACHE = new ConcurrentHashMap<>();
+    private final Type returnType;
+    private final List<Type> paramTypes;
 
-    public FunctionType(Type returnType) {
-        this.returnType = returnType;
-        this.paramTypes = new ArrayList<>();
+    private FunctionType(Key key) {
+        this.returnType = key.returnType;
+        this.paramTypes = key.paramTypes;
     }
 
-    public FunctionType(Type returnType, List<Type> paramTypes) {
-        this.returnType = returnType;
-        this.paramTypes = paramTypes;
+    /**
+     * @param paramTypes 参数类型, 会被复制, 之后修改不影响得到的函数类型
+     */
+    public static FunctionType get(Type returnType, List<Type> paramTypes) {
+        return CACHE.computeIfAbsent(new Key(returnType, List.copyOf(paramTypes)), FunctionType::new);
     }
 
     public Type getReturnType() {
         return returnType;
     }
 
+    /**
+     * @return 不可修改的参数类型列表
+     */
     public List<Type> getParamTypes() {
         return paramTypes;
     }
 
-    public void addParamType(Type type) {
-        paramTypes.add(type);
-    }
+    // 各类型已经唯一化, record的equals逐个按引用比较
+    private record Key(Type returnType, List<Type> paramTypes) {}
 }
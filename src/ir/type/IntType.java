@@ -1,29 +1,43 @@
 package ir.type;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class IntType implements Type {
     public static final IntType i1 = new IntType(1);
     public static final IntType i8 = new IntType(8);
     public static final IntType i32 = new IntType(32);
+    // 其他位宽的整数类型, 用到时才创建
+    private static final Map<Integer, IntType> CACHE = new ConcurrentHashMap<>();
     private final int bit;
 
-    public IntType(int bit) {
+    private IntType(int bit) {
         this.bit = bit;
     }
 
+    public static IntType get(int bit) {
+        switch (bit) {
+            case 1: return i1;
+            case 8: return i8;
+            case 32: return i32;
+            default: return CACHE.computeIfAbsent(bit, IntType::new);
+        }
+    }
+
     public int getBit() {
         return bit;
     }
 
     public boolean isI1() {
-        return bit == 1;
+        return this == i1;
     }
 
     public boolean isI8() {
-        return bit == 8;
+        return this == i8;
     }
 
     public boolean isI32() {
-        return bit == 32;
+        return this == i32;
     }
 
     @Override
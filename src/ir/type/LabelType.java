@@ -1,19 +1,15 @@
 package ir.type;
 
+/**
+ * 基本块的类型, 所有基本块共用同一个实例
+ */
 public class LabelType implements Type {
-    private static int HANDLER = -1;
-    private final int handler;
+    public static final LabelType labelType = new LabelType();
 
-    public LabelType() {
-        this.handler = ++LabelType.HANDLER;
-    }
-
-    public int getHandler() {
-        return handler;
-    }
+    private LabelType() {}
 
     @Override
     public String toString() {
-        return "label_" + handler;
+        return "label";
     }
 }
@@ -1,12 +1,21 @@
 package ir.type;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class PointerType implements Type {
-    private Type targetType;
+    // 以目标类型为键, 目标类型已经唯一化, 因此按引用比较即可
+    private static final Map<Type, PointerType> CACHE = new ConcurrentHashMap<>();
+    private final Type targetType;
 
-    public PointerType(Type targetType) {
+    private PointerType(Type targetType) {
         this.targetType = targetType;
     }
 
+    public static PointerType get(Type targetType) {
+        return CACHE.computeIfAbsent(targetType, PointerType::new);
+    }
+
     public Type getTargetType() {
         return targetType;
     }
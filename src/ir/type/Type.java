@@ -1,4 +1,10 @@
 package ir.type;
 
+/**
+ * IR中的类型
+ * 所有类型都经过唯一化: 只能通过各类型的get方法或单例获取, 结构相同的类型是同一个对象,
+ * 因此判断类型相等直接用==比较即可
+ * 类型对象不可变, 在并行构造的各函数(以及各文件)间共享
+ */
 public interface Type {
 }
@@ -2,6 +2,9 @@ package ir.type;
 
 public class VoidType implements Type {
     public static final VoidType voidType = new VoidType();
+
+    private VoidType() {}
+
     @Override
     public String toString() {
         return "void";
@@ -1,25 +1,34 @@
 package ir.value;
 
-import ir.Use;
+import ir.IRWriter;
 import ir.type.LabelType;
 import ir.value.instructions.Instruction;
 
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class BasicBlock extends User {
-    public static final BasicBlock PLACE_HOLDER = new BasicBlock();
     private Function parent;
     private BasicBlock prev;
     private BasicBlock next;
+    // 基本块包含的指令, 以指令自身的prev/next链接为双向链表, 插入和删除都是O(1)的
+    // 指令不作为基本块的操作数, 因此替换指令的使用时不会改动基本块
+    private Instruction firstInst;
+    private Instruction lastInst;
     public BasicBlock(Function function) {
-        super(String.valueOf(++valNumber), new LabelType());
+        // 基本块没有名称, 输出时才由SlotTracker编号
+        super("", LabelType.labelType);
         function.addBasicBlock(this);
         parent = function;
         prev = null;
         next = null;
     }
-    private BasicBlock() {
-        super("", new LabelType());
+    /**
+     * 跳转目标尚未确定时占位用的基本块, 不属于任何函数, 回填后不再被使用
+     * 占位块的使用链表记录了对它的跳转, 因此由各Vistor各自创建, 不在函数或模块间共享
+     */
+    public BasicBlock() {
+        super("", LabelType.labelType);
     }
 
     public Function getParent() {
@@ -50,31 +59,118 @@ public class BasicBlock extends User {
         this.next = next;
     }
 
-    public Instruction getInst(int index) {
-        return (Instruction) getOperand(index);
+    /**
+     * 在基本块末尾加入指令
+     */
+    public void addInst(Instruction inst) {
+        insertBefore(inst, null);
     }
 
-    public Instruction getLastInst() {
-        if (getOperands().isEmpty()) return null;
-        return (Instruction) getOperands().get(getOperands().size() - 1);
+    /**
+     * 将inst插入到pos之前, pos为null时插入到末尾
+     * @param inst 不属于任何基本块的指令
+     * @param pos 本基本块中的指令或null
+     */
+    public void insertBefore(Instruction inst, Instruction pos) {
+        if (inst.getParent() != null) {
+            throw new IllegalStateException("instruction already in a basic block");
+        }
+        Instruction prev = pos == null ? lastInst : pos.getPrev();
+        inst.setParent(this);
+        inst.setPrev(prev);
+        inst.setNext(pos);
+        if (prev == null) {
+            firstInst = inst;
+        } else {
+            prev.setNext(inst);
+        }
+        if (pos == null) {
+            lastInst = inst;
+        } else {
+            pos.setPrev(inst);
+        }
     }
 
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder("\n" + getName() + ":\n");
-        Instruction inst;
-        for (Value value : operands) {
-            inst = (Instruction) value;
-            sb.append("  ").append(inst.toString()).append("\n");
+    /**
+     * 将inst插入到pos之后, pos为null时插入到开头
+     */
+    public void insertAfter(Instruction inst, Instruction pos) {
+        insertBefore(inst, pos == null ? firstInst : pos.getNext());
+    }
+
+    /**
+     * 将inst从本基本块中移除, 不改变其操作数, 移除后可以再插入到其他位置
+     */
+    public void removeInst(Instruction inst) {
+        if (inst.getParent() != this) {
+            throw new IllegalStateException("instruction not in this basic block");
         }
-        return sb.toString();
+        Instruction prev = inst.getPrev();
+        Instruction next = inst.getNext();
+        if (prev == null) {
+            firstInst = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next == null) {
+            lastInst = prev;
+        } else {
+            next.setPrev(prev);
+        }
+        inst.setParent(null);
+        inst.setPrev(null);
+        inst.setNext(null);
+    }
+
+    public boolean isEmpty() {
+        return firstInst == null;
+    }
+
+    /**
+     * 按顺序遍历指令, 不构造列表
+     * 遍历时可以移除(或eraseFromParent)当前返回的指令, 但不能移除其后的指令
+     */
+    public Iterable<Instruction> getInstructions() {
+        return () -> new Iterator<>() {
+            private Instruction cur = null;
+            private Instruction next = firstInst;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Instruction next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                cur = next;
+                next = next.getNext();
+                return cur;
+            }
+
+            @Override
+            public void remove() {
+                if (cur == null) {
+                    throw new IllegalStateException();
+                }
+                removeInst(cur);
+                cur = null;
+            }
+        };
+    }
+
+    public Instruction getFirstInst() {
+        return firstInst;
+    }
+
+    public Instruction getLastInst() {
+        return lastInst;
     }
 
     @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof BasicBlock blk) {
-            return parent.equals(blk.parent) && getName().equals(blk.getName());
-        }
-        return false;
+    public String toString() {
+        return IRWriter.toString(this);
     }
 }
@@ -1,9 +1,21 @@
 package ir.value;
 
+import ir.Use;
 import ir.type.Type;
 
 public class Const extends User {
     public Const(String name, Type type) {
         super(name, type);
     }
+
+    // 常量池中的常量在并行构造的各函数间共享, 使用链表需要同步
+    @Override
+    public synchronized void addUse(Use use) {
+        super.addUse(use);
+    }
+
+    @Override
+    public synchronized void removeUse(Use use) {
+        super.removeUse(use);
+    }
 }
@@ -1,26 +1,43 @@
 package ir.value;
 
+import ir.ConstPool;
+import ir.IRWriter;
 import ir.type.ArrayType;
+import ir.type.IntType;
 import ir.type.Type;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * 常量数组, 有两种存放方式:
+ * 元素都是整数常量且各子数组形状相同时, 所有整数按行优先展开存放在一个int[]中(全为0时不存放),
+ * 子数组只在需要Value时构造为共享同一int[]的视图, 按下标取值只需按各维的跨度计算偏移;
+ * 否则(局部数组以非常量表达式初始化, 或各行长度不同)逐个保存元素
+ */
 public class ConstArray extends Const {
     private Type elementType;
-    private List<Value> array;
     private int length;
     private boolean isZero;
+    // 逐个保存的元素, 展开存放时为null
+    private final List<Value> array;
+    // 展开存放的整数及本数组在其中的起始位置, 全为0时data为null
+    private final int[] data;
+    private final int offset;
 
     /**
      * 由于构造函数super的限制, 这里的type由外界事先求出再提供
+     * 一般通过ConstPool获取, 以便相同的常量数组共用一个对象
+     * 逐个保存元素, 元素都是整数常量时应使用展开存放的构造函数
      * @param type Type
-     * @param array List<Value>
+     * @param array List<Value>, 直接保存而不复制, 调用后不能再修改
      */
     public ConstArray(Type type, List<Value> array) {
         super("", type);
         this.elementType = array.get(0).getType();
-        this.array = new ArrayList<>(array);
+        this.array = array;
+        this.data = null;
+        this.offset = 0;
         this.length = array.size();
         this.isZero = true;
         if (elementType instanceof ArrayType) {
@@ -40,61 +57,189 @@ public class ConstArray extends Const {
         }
     }
 
+    /**
+     * 全为0的常量数组
+     */
     public ConstArray(Type type) {
+        this(type, null, 0);
+    }
+
+    /**
+     * 展开存放的常量数组
+     * @param data 按行优先展开的所有整数, 直接保存而不复制, 为null表示全为0
+     */
+    public ConstArray(Type type, int[] data) {
+        this(type, data, 0);
+    }
+
+    private ConstArray(Type type, int[] data, int offset) {
         super("", type);
         this.elementType = ((ArrayType) type).getElementType();
-        this.array = new ArrayList<>();
-        this.length = 0;
-        this.isZero = true;
+        this.length = ((ArrayType) type).getLength();
+        this.array = null;
+        this.offset = offset;
+        this.data = isZero(data, offset, ((ArrayType) type).getCapacity()) ? null : data;
+        this.isZero = this.data == null;
+    }
+
+    /**
+     * 将元素展开为按行优先排列的整数, 逐个保存的内层各行(数组初始值的中间结果)递归展开到同一个int[]中
+     * @return 展开的结果, 有非常量元素或子数组的类型与元素类型不同时为null
+     */
+    public static int[] flatten(Type type, List<Value> elements) {
+        int[] data = new int[((ArrayType) type).getCapacity()];
+        return flatten(type, elements, data, 0) ? data : null;
+    }
+
+    private static boolean flatten(Type type, List<Value> elements, int[] data, int from) {
+        Type elementType = ((ArrayType) type).getElementType();
+        int stride = elementType instanceof ArrayType arrayType ? arrayType.getCapacity() : 1;
+        for (int i = 0; i < elements.size(); i++) {
+            Value element = elements.get(i);
+            // 类型都已唯一化, 形状相同即为同一个类型
+            if (element.getType() != elementType) {
+                return false;
+            }
+            if (element instanceof ConstInt constInt) {
+                data[from + i] = constInt.getValue();
+            } else if (element instanceof ConstArray constArray) {
+                if (constArray.array != null) {
+                    if (!flatten(elementType, constArray.array, data, from + i * stride)) {
+                        return false;
+                    }
+                } else if (constArray.data != null) {
+                    System.arraycopy(constArray.data, constArray.offset, data, from + i * stride, stride);
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(int[] data, int from, int count) {
+        if (data == null) {
+            return true;
+        }
+        for (int i = from, end = from + count; i < end; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean isZero() {
         return isZero;
     }
 
-    public Type getElementType() {
-        return elementType;
+    /**
+     * 是否展开存放, 此时元素都是整数常量
+     */
+    public boolean isFlat() {
+        return array == null;
+    }
+
+    /**
+     * 元素是否是展开存放的整数, 此时可以用getInt直接取值
+     */
+    public boolean hasIntElements() {
+        return array == null && elementType == IntType.i32;
     }
 
-    public List<Value> getArray() {
+    /**
+     * 逐个保存的元素, 展开存放时为null
+     */
+    public List<Value> getElements() {
         return array;
     }
 
+    public Type getElementType() {
+        return elementType;
+    }
+
     public int getLength() {
         return length;
     }
 
-    public Value getElement(List<Value> idxList) {
-        List<Value> arr = this.array;
+    /**
+     * 获取第index个元素, 展开存放的整数元素从所在模块的常量池中获取, 子数组每次调用构造新的视图
+     */
+    public Value getElement(int index, ConstPool pool) {
+        return hasIntElements() ? pool.getConstInt(getInt(index)) : getElement(index);
+    }
+
+    /**
+     * 获取第index个元素, 不能用于展开存放的整数元素(hasIntElements), 此时应使用getInt或getElement(index, pool)
+     */
+    public Value getElement(int index) {
+        if (array != null) {
+            return array.get(index);
+        }
+        Objects.checkIndex(index, length);
+        if (elementType instanceof ArrayType arrayType) {
+            return new ConstArray(arrayType, data, offset + index * arrayType.getCapacity());
+        }
+        throw new IllegalStateException("integer elements must be taken from the constant pool");
+    }
+
+    /**
+     * 获取第index个整数元素, 只能在hasIntElements时调用
+     */
+    public int getInt(int index) {
+        Objects.checkIndex(index, length);
+        return data == null ? 0 : data[offset + index];
+    }
+
+    /**
+     * 按各维下标计算元素在展开存放中的偏移, 只能在isFlat时调用
+     * @return 偏移(可用于getFlatInt), 下标不全是常量或不足以取到整数元素时为-1
+     */
+    public int getFlatIndex(List<Value> idxList) {
+        int index = offset;
+        Type type = getType();
+        for (Value idx : idxList) {
+            if (!(type instanceof ArrayType arrayType)) {
+                break;
+            }
+            if (!(idx instanceof ConstInt i)) {
+                return -1;
+            }
+            type = arrayType.getElementType();
+            int stride = type instanceof ArrayType elementArrayType ? elementArrayType.getCapacity() : 1;
+            index += Objects.checkIndex(i.getValue(), arrayType.getLength()) * stride;
+        }
+        return type instanceof ArrayType ? -1 : index;
+    }
+
+    /**
+     * 获取getFlatIndex得到的偏移处的整数
+     */
+    public int getFlatInt(int index) {
+        return data == null ? 0 : data[index];
+    }
+
+    /**
+     * 按各维下标获取逐个保存的数组中的整数元素
+     * @param pool 所在模块的常量池, 子数组展开存放时从中获取ConstInt
+     * @return 对应的ConstInt, 下标不全是常量或不足以取到整数元素时为null
+     */
+    public Value getElement(List<Value> idxList, ConstPool pool) {
+        Value ele = this;
         for (Value idx : idxList) {
-            if (idx instanceof ConstInt i) {
-                Value ele = arr.get(i.getValue());
-                if (ele instanceof ConstArray a) {
-                    arr = a.getArray();
-                } else
-                    return ele instanceof ConstInt i32 ? i32 : null;
-            } else {
+            if (!(idx instanceof ConstInt i)) {
                 return null;
             }
+            ele = ((ConstArray) ele).getElement(i.getValue(), pool);
+            if (!(ele instanceof ConstArray)) {
+                return ele instanceof ConstInt i32 ? i32 : null;
+            }
         }
         return null;
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        if (isZero) {
-            sb.append(this.getType().toString()).append(" ").append("zeroinitializer");
-        } else {
-            sb.append(this.getType().toString()).append(" ").append("[");
-            for (int i = 0; i < array.size(); i++) {
-                if (i != 0) {
-                    sb.append(", ");
-                }
-                sb.append(array.get(i).toString());
-            }
-            sb.append("]");
-        }
-        return sb.toString();
+        return IRWriter.toString(this);
     }
 }
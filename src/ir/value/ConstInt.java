@@ -1,12 +1,13 @@
 package ir.value;
 
+import ir.IRWriter;
 import ir.type.IntType;
 import ir.type.Type;
 
 public class ConstInt extends Const {
     private int value;
-    public static final ConstInt ZERO = new ConstInt(IntType.i32, 0);
-    public static final ConstInt ONE = new ConstInt(IntType.i32, 1);
+    // 一般通过ConstPool获取, 以便模块内相同的常量共用一个对象
+    // 常量的使用链表记录了所在模块的指令, 因此不能在模块间共享
     public ConstInt(Type type, int value) {
         super(String.valueOf(value), type);
         this.value = value;
@@ -27,6 +28,6 @@ public class ConstInt extends Const {
 
     @Override
     public String toString() {
-        return "i32 " + this.value;
+        return IRWriter.toString(this);
     }
 }
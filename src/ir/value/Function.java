@@ -1,6 +1,7 @@
 package ir.value;
 
-import ir.IRModule;
+import ir.IRWriter;
+import ir.Use;
 import ir.type.FunctionType;
 import ir.type.Type;
 import ir.value.instructions.Instruction;
@@ -14,16 +15,14 @@ public class Function extends User {
     private List<BasicBlock> basicBlocks;
 
     public Function(String name, Type returnType, List<Type> paramTypes, boolean isLibrary) {
-        super(name, new FunctionType(returnType, paramTypes));
+        super(name, FunctionType.get(returnType, paramTypes));
         this.isLibrary = isLibrary;
         args = new ArrayList<>();
         for (Type type : paramTypes) {
             Argument arg = new Argument(type);
             args.add(arg);
-            addOperand(arg);
         }
         basicBlocks = new ArrayList<>();
-        IRModule.getInstance().addFunction(this);
     }
 
     public void addBasicBlock(BasicBlock basicBlock) {
@@ -36,7 +35,14 @@ public class Function extends User {
             prev.setNext(basicBlock);
             basicBlock.setPrev(prev);
         }
-        addOperand(basicBlock);
+    }
+
+    public boolean isLibrary() {
+        return isLibrary;
+    }
+
+    public Type getReturnType() {
+        return ((FunctionType) getType()).getReturnType();
     }
 
     public List<Argument> getArgs() {
@@ -52,35 +58,20 @@ public class Function extends User {
         return basicBlocks.get(basicBlocks.size() - 1).getLastInst();
     }
 
+    // 函数可能被并行构造的各函数调用, 使用链表需要同步
+    @Override
+    public synchronized void addUse(Use use) {
+        super.addUse(use);
+    }
+
+    @Override
+    public synchronized void removeUse(Use use) {
+        super.removeUse(use);
+    }
+
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        if (isLibrary)
-            sb.append("declare ");
-        else
-            sb.append("define dso_local ");
-        sb.append(((FunctionType) getType()).getReturnType().toString())
-                .append(" @")
-                .append(getName())
-                .append("(");
-        for (int i = 0; i < args.size(); i++) {
-            sb.append(args.get(i).getType().toString());
-            if (!isLibrary)
-                sb.append(" ").append(args.get(i).getName());
-            if (i != args.size() - 1)
-                sb.append(", ");
-        }
-        if (basicBlocks.isEmpty())
-            sb.append(")");
-        else {
-            sb.append(") {");
-            for (BasicBlock basicBlock : basicBlocks) {
-                if (!basicBlock.getOperands().isEmpty())
-                    sb.append(basicBlock.toString());
-            }
-            sb.append("}\n");
-        }
-        return sb.toString();
+        return IRWriter.toString(this);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package ir.value;
 
-import ir.IRModule;
+import ir.IRWriter;
+import ir.Use;
 import ir.type.IntType;
 import ir.type.PointerType;
 import ir.type.Type;
@@ -10,10 +11,9 @@ public class GlobalVar extends User {
     private boolean isConst;
     private Value value;
     public GlobalVar(String name, Type type, boolean isConst, Value value) {
-        super("@" + name, new PointerType(type));
+        super("@" + name, PointerType.get(type));
         this.isConst = isConst;
         this.value = value == null ? new Value("", VoidType.voidType) : value;
-        IRModule.getInstance().addGlobalVar(this);
     }
 
     public boolean isConst() {
@@ -24,8 +24,19 @@ public class GlobalVar extends User {
         return value;
     }
 
+    // 全局变量在并行构造的各函数间共享, 使用链表需要同步
+    @Override
+    public synchronized void addUse(Use use) {
+        super.addUse(use);
+    }
+
+    @Override
+    public synchronized void removeUse(Use use) {
+        super.removeUse(use);
+    }
+
     @Override
     public String toString() {
-        return getName() + " = dso_local " + (isConst ? "constant" : "global") + " " + value.toString();
+        return IRWriter.toString(this);
     }
 }
@@ -3,15 +3,30 @@ package ir.value;
 import ir.Use;
 import ir.type.Type;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
 public class User extends Value {
-    protected List<Value> operands;
+    // 第i个操作数对应的使用
+    private final List<Use> operandUses;
+    // operandUses的只读视图, 修改操作数只能通过setOperand
+    private final List<Value> operands;
 
     public User(String name, Type type) {
         super(name, type);
-        this.operands = new ArrayList<>();
+        this.operandUses = new ArrayList<>();
+        this.operands = new AbstractList<>() {
+            @Override
+            public Value get(int index) {
+                return operandUses.get(index).getValue();
+            }
+
+            @Override
+            public int size() {
+                return operandUses.size();
+            }
+        };
     }
 
     public List<Value> getOperands() {
@@ -19,19 +34,30 @@ public class User extends Value {
     }
 
     public Value getOperand(int index) {
-        return operands.get(index);
+        return operandUses.get(index).getValue();
     }
 
+    public Use getOperandUse(int index) {
+        return operandUses.get(index);
+    }
+
+    /**
+     * 替换第index个操作数, 同时维护新旧操作数的使用链表
+     */
     public void setOperand(int index, Value value) {
-        operands.set(index, value);
+        operandUses.get(index).setValue(value);
     }
 
     public void addOperand(Value operand) {
-        this.operands.add(operand);
-        Use use = new Use(operand, this, operands.size() - 1);
-        if (operand != null) {
-            operand.addUse(use);
+        operandUses.add(new Use(operand, this, operandUses.size()));
+    }
+
+    /**
+     * 解除对所有操作数的使用, 操作数均置为null, 删除该User前调用
+     */
+    public void dropAllReferences() {
+        for (Use use : operandUses) {
+            use.setValue(null);
         }
-        this.addUse(use);
     }
 }
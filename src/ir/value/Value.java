@@ -3,22 +3,20 @@ package ir.value;
 import ir.Use;
 import ir.type.Type;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class Value {
     private String name;
     private Type type;
-    private List<Use> useList;
-    // 全局的valNUmber, 用于给Value编号
-    public static int valNumber = -1;
+    // 使用链表的头节点, 各节点即Use本身, 新的使用加在表头
+    private Use firstUse;
 
     public Value() {}
 
     public Value(String name, Type type) {
         this.name = name;
         this.type = type;
-        this.useList = new ArrayList<>();
     }
 
     public String getName() {
@@ -37,19 +35,92 @@ public class Value {
         this.type = type;
     }
 
-    public List<Use> getUseList() {
-        return useList;
+    /**
+     * 一般不直接调用, 由Use在构造和修改时维护
+     * 这里不加同步: 指令, 参数和基本块只在所在函数中使用, 函数体由同一线程构造;
+     * 在并行构造的各函数间共享的模块级的值(函数, 全局变量, 常量池中的常量)重写为同步的版本
+     */
+    public void addUse(Use use) {
+        use.setPrev(null);
+        use.setNext(firstUse);
+        if (firstUse != null) {
+            firstUse.setPrev(use);
+        }
+        firstUse = use;
     }
 
-    public void addUse(Use use) {
-        useList.add(use);
+    public void removeUse(Use use) {
+        Use prev = use.getPrev();
+        Use next = use.getNext();
+        if (prev == null) {
+            firstUse = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next != null) {
+            next.setPrev(prev);
+        }
+        use.setPrev(null);
+        use.setNext(null);
+    }
+
+    public boolean hasUses() {
+        return firstUse != null;
+    }
+
+    /**
+     * 遍历对该值的所有使用, 不构造列表
+     * 遍历时不能修改当前使用之外的使用, 需要替换时用replaceAllUsesWith
+     */
+    public Iterable<Use> uses() {
+        return () -> new Iterator<>() {
+            private Use use = firstUse;
+
+            @Override
+            public boolean hasNext() {
+                return use != null;
+            }
+
+            @Override
+            public Use next() {
+                if (use == null) {
+                    throw new NoSuchElementException();
+                }
+                Use cur = use;
+                use = use.getNext();
+                return cur;
+            }
+        };
+    }
+
+    /**
+     * 遍历使用该值的所有User, 同一User多次使用时出现多次
+     */
+    public Iterable<User> users() {
+        return () -> new Iterator<>() {
+            private final Iterator<Use> uses = uses().iterator();
+
+            @Override
+            public boolean hasNext() {
+                return uses.hasNext();
+            }
+
+            @Override
+            public User next() {
+                return uses.next().getUser();
+            }
+        };
     }
 
-    public List<User> getUserList() {
-        List<User> userList = new ArrayList<>();
-        for (Use use : useList) {
-            userList.add(use.getUser());
+    /**
+     * 将所有对该值的使用改为使用value, 每个使用O(1)
+     */
+    public void replaceAllUsesWith(Value value) {
+        if (value == this) {
+            return;
+        }
+        while (firstUse != null) {
+            firstUse.setValue(value);
         }
-        return userList;
     }
 }
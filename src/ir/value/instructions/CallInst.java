@@ -1,8 +1,8 @@
 package ir.value.instructions;
 
+import ir.IRWriter;
 import ir.type.FunctionType;
 import ir.type.Type;
-import ir.type.VoidType;
 import ir.value.Function;
 import ir.value.Value;
 
@@ -11,9 +11,6 @@ import java.util.List;
 public class CallInst extends Instruction {
     public CallInst(Function function, List<Value> args) {
         super(((FunctionType) function.getType()).getReturnType(), Operator.Call);
-        if (!(((FunctionType) function.getType()).getReturnType() instanceof VoidType)) {
-            this.setName("%" + ++valNumber);
-        }
         addOperand(function);
         for (Value arg : args) {
             addOperand(arg);
@@ -22,25 +19,6 @@ public class CallInst extends Instruction {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        if (!(getType() instanceof VoidType)) {
-            sb.append(getName())
-                    .append(" = ");
-        }
-        sb.append("call ")
-                .append(getType().toString())
-                .append(" @")
-                .append(getOperands().get(0).getName())
-                .append("(");
-        for (int i = 1; i < getOperands().size(); i++) {
-            sb.append(getOperands().get(i).getType().toString())
-                    .append(" ")
-                    .append(getOperands().get(i).getName());
-            if (i != getOperands().size() - 1) {
-                sb.append(", ");
-            }
-        }
-        sb.append(")");
-        return sb.toString();
+        return IRWriter.toString(this);
     }
 }
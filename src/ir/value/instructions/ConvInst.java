@@ -1,5 +1,6 @@
 package ir.value.instructions;
 
+import ir.IRWriter;
 import ir.type.IntType;
 import ir.type.PointerType;
 import ir.type.VoidType;
@@ -11,23 +12,15 @@ public class ConvInst extends Instruction {
         if (op == Operator.Zext) {
             setType(IntType.i32);
         } else if (op == Operator.Bitcast) {
-            setType(new PointerType(IntType.i32));
+            setType(PointerType.get(IntType.i32));
         } else if (op == Operator.Trunc) {
             setType(IntType.i1);
         }
         addOperand(value);
-        setName("%" + ++valNumber);
     }
 
     @Override
     public String toString() {
-        if (getOp() == Operator.Zext) {
-            return getName() + " = zext i1 " + getOperands().get(0).getName() + " to i32";
-        } else if (getOp() == Operator.Bitcast) {
-            return getName() + " = bitcast " + getOperands().get(0).getType() + getOperands().get(0).getName() + " to i32*";
-        } else if (getOp() == Operator.Trunc) {
-            return getName() + " = trunc i32 " + getOperands().get(0).getName() + " to i1";
-        }
-        return "";
+        return IRWriter.toString(this);
     }
 }
@@ -1,10 +1,16 @@
 package ir.value.instructions;
 
 import ir.type.Type;
+import ir.type.VoidType;
+import ir.value.BasicBlock;
 import ir.value.User;
 
 public abstract class Instruction extends User {
     private Operator op;
+    // 所属基本块及其指令链表中的前后指令, 由BasicBlock维护
+    private BasicBlock parent;
+    private Instruction prev;
+    private Instruction next;
     public Instruction(Type type, Operator op) {
         super("", type);
         this.op = op;
@@ -13,4 +19,62 @@ public abstract class Instruction extends User {
     public Operator getOp() {
         return op;
     }
+
+    /**
+     * 获取所属基本块
+     * @return 所属基本块(尚未加入或已被移除时为null)
+     */
+    public BasicBlock getParent() {
+        return parent;
+    }
+
+    public void setParent(BasicBlock parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 获取所属基本块中的前一条指令
+     * @return 前一条指令(可能为null)
+     */
+    public Instruction getPrev() {
+        return prev;
+    }
+
+    public void setPrev(Instruction prev) {
+        this.prev = prev;
+    }
+
+    /**
+     * 获取所属基本块中的下一条指令
+     * @return 下一条指令(可能为null)
+     */
+    public Instruction getNext() {
+        return next;
+    }
+
+    public void setNext(Instruction next) {
+        this.next = next;
+    }
+
+    /**
+     * 从所属基本块中移除, 并解除对所有操作数的使用
+     * 调用前该指令的值应当已经没有使用(或已通过replaceAllUsesWith替换)
+     */
+    public void eraseFromParent() {
+        if (parent != null) {
+            parent.removeInst(this);
+        }
+        dropAllReferences();
+    }
+
+    /**
+     * 指令是否产生一个需要编号的值, store, br, ret 和没有返回值的call不产生
+     */
+    public boolean hasValue() {
+        switch (op) {
+            case Store, Br, Ret: return false;
+            case Call: return !(getType() instanceof VoidType);
+            default: return true;
+        }
+    }
 }
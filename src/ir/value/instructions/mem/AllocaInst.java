@@ -1,17 +1,17 @@
 package ir.value.instructions.mem;
 
+import ir.IRWriter;
 import ir.type.PointerType;
 import ir.type.Type;
 import ir.value.instructions.Operator;
 
 public class AllocaInst extends MemInst {
     public AllocaInst(Type type) {
-        super(new PointerType(type), Operator.Alloca);
-        setName("%" + ++valNumber);
+        super(PointerType.get(type), Operator.Alloca);
     }
 
     @Override
     public String toString() {
-        return getName() + " = alloca " + ((PointerType) getType()).getTargetType();
+        return IRWriter.toString(this);
     }
 }
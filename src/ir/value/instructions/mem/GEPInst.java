@@ -1,5 +1,6 @@
 package ir.value.instructions.mem;
 
+import ir.IRWriter;
 import ir.type.ArrayType;
 import ir.type.PointerType;
 import ir.type.Type;
@@ -14,8 +15,7 @@ public class GEPInst extends MemInst {
     private Value target;
 
     public GEPInst(Value pointer, List<Value> indexs) {
-        super(new PointerType(getElementType(pointer, indexs)), Operator.GEP);
-        setName("%" + ++valNumber);
+        super(PointerType.get(getElementType(pointer, indexs)), Operator.GEP);
         if (pointer instanceof GEPInst) {
             target = ((GEPInst) pointer).target;
         } else if (pointer instanceof AllocaInst) {
@@ -50,20 +50,6 @@ public class GEPInst extends MemInst {
 
     @Override
     public String toString() {
-        StringBuilder s = new StringBuilder();
-        s.append(getName()).append(" = getelementptr ");
-        // 如果是字符串，需要加 inbounds
-        if (getPointer().getType() instanceof PointerType && ((PointerType) getPointer().getType()).isString()) {
-            s.append("inbounds ");
-        }
-        s.append(((PointerType) getPointer().getType()).getTargetType()).append(", ");
-        for (int i = 0; i < getOperands().size(); i++) {
-            if (i == 0) {
-                s.append(getPointer().getType()).append(" ").append(getPointer().getName());
-            } else {
-                s.append(", ").append(getOperands().get(i).getType()).append(" ").append(getOperands().get(i).getName());
-            }
-        }
-        return s.toString();
+        return IRWriter.toString(this);
     }
 }
@@ -1,5 +1,6 @@
 package ir.value.instructions.mem;
 
+import ir.IRWriter;
 import ir.type.PointerType;
 import ir.type.Type;
 import ir.value.Value;
@@ -9,7 +10,6 @@ public class LoadInst extends MemInst {
     public LoadInst(Value pointer) {
         super(((PointerType) pointer.getType()).getTargetType(), Operator.Load);
         // TODO: 数组类型
-        setName("%" + ++valNumber);
         addOperand(pointer);
     }
 
@@ -19,6 +19,6 @@ public class LoadInst extends MemInst {
 
     @Override
     public String toString() {
-        return getName() + " = load " + getType() + ", " + getPointer().getType() + " " + getPointer().getName();
+        return IRWriter.toString(this);
     }
 }
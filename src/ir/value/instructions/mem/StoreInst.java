@@ -1,5 +1,6 @@
 package ir.value.instructions.mem;
 
+import ir.IRWriter;
 import ir.type.PointerType;
 import ir.type.Type;
 import ir.value.Value;
@@ -22,6 +23,6 @@ public class StoreInst extends MemInst {
 
     @Override
     public String toString() {
-        return "store " + getLValue().getType() + " " + getLValue().getName() + ", " + getPointer().getType() + " " + getPointer().getName();
+        return IRWriter.toString(this);
     }
 }
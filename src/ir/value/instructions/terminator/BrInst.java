@@ -1,5 +1,6 @@
 package ir.value.instructions.terminator;
 
+import ir.IRWriter;
 import ir.type.Type;
 import ir.type.VoidType;
 import ir.value.Value;
@@ -55,10 +56,6 @@ public class BrInst extends TerminatorInst {
 
     @Override
     public String toString() {
-        if (isJmp()) {
-            return "br label %" + getOperand(0).getName();
-        } else {
-            return "br i1 " + getOperand(0).getName() + ", label %" + getOperand(1).getName() + ", label %" + getOperand(2).getName();
-        }
+        return IRWriter.toString(this);
     }
 }
@@ -1,5 +1,6 @@
 package ir.value.instructions.terminator;
 
+import ir.IRWriter;
 import ir.type.VoidType;
 import ir.value.Value;
 import ir.value.instructions.Operator;
@@ -20,10 +21,6 @@ public class RetInst extends TerminatorInst {
 
     @Override
     public String toString() {
-        if (getOperands().size() == 1) {
-            return "ret " + getOperands().get(0).getType() + " " + getOperands().get(0).getName();
-        } else {
-            return "ret void";
-        }
+        return IRWriter.toString(this);
     }
 }
@@ -0,0 +1,292 @@
+package node;
+
+import token.TokenBuffer;
+import token.TokenStream;
+import token.TokenType;
+import utils.IntStack;
+import utils.OutputSink;
+
+import java.util.Arrays;
+
+/**
+ * 以并列的int数组存放的语法树, 节点以下标表示
+ * 每个节点记录类型, 第一个子节点, 下一个兄弟节点, 终结符对应的token下标和行号
+ * 终结符节点记录token在Lexer的token序列中的下标, 直接从中读取token;
+ * 只有流式输出时token在被越过后会被释放, 此时才将叶子token另存于语法树自己的TokenBuffer中
+ * 构造时子节点先于父节点生成: Parser在分析一个语法成分前记下构造栈的位置, 分析完成后将其后的节点收为子节点
+ * 二元表达式MulExp, AddExp, RelExp, EqExp, LAndExp, LOrExp以平铺的形式存放: 操作数 {运算符 操作数},
+ * 只有一个操作数的层级不生成节点, 输出语法成分时再还原出文法要求的左递归结构
+ */
+public class SyntaxTree {
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final int NONE = -1;
+    private static final int PRINT_NODE = -1;
+    // 二元表达式的层级, 下标即层级, 0为UnaryExp
+    private static final NodeType[] BINARY_TYPES = {
+            NodeType.UnaryExp, NodeType.MulExp, NodeType.AddExp, NodeType.RelExp, NodeType.EqExp, NodeType.LAndExp, NodeType.LOrExp
+    };
+    public static final int ADD_EXP_LEVEL = 2;
+    public static final int LOR_EXP_LEVEL = 6;
+    // 各类非终结符输出时的值
+    private static final String[] LABELS = new String[NODE_TYPES.length];
+
+    static {
+        for (NodeType type : NODE_TYPES) {
+            LABELS[type.ordinal()] = '<' + type.toString() + '>';
+        }
+        // 以下节点类型不需要输出
+        LABELS[NodeType.BlockItem.ordinal()] = "";
+        LABELS[NodeType.Decl.ordinal()] = "";
+        LABELS[NodeType.BType.ordinal()] = "";
+    }
+
+    /**
+     * 获取二元表达式节点的层级
+     * @return MulExp为1, 依次递增至LOrExp为6, 其余节点为0
+     */
+    public static int getBinaryLevel(NodeType type) {
+        switch (type) {
+            case MulExp: return 1;
+            case AddExp: return 2;
+            case RelExp: return 3;
+            case EqExp: return 4;
+            case LAndExp: return 5;
+            case LOrExp: return 6;
+            default: return 0;
+        }
+    }
+
+    public static NodeType getBinaryType(int level) {
+        return BINARY_TYPES[level];
+    }
+
+    // 终结符节点的token所在的序列, 流式输出时为leafCopies, 否则为Lexer的token序列
+    private final TokenStream leafTokens;
+    private final TokenBuffer leafCopies;
+    private int size = 0;
+    private int[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokenIndexes;
+    private int[] lines;
+    // 构造栈, 存放已完成但还没有父节点的节点
+    private int[] stack = new int[64];
+    private int stackSize = 0;
+
+    public SyntaxTree(TokenStream tokens, int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        if (tokens.isStreaming()) {
+            this.leafCopies = new TokenBuffer(tokens.getSource(), capacity, tokens.getIdentPool());
+            this.leafTokens = leafCopies;
+        } else {
+            this.leafCopies = null;
+            this.leafTokens = tokens;
+        }
+        kinds = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokenIndexes = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    private int newNode(NodeType type, int firstChild, int tokenIndex, int line) {
+        if (size == kinds.length) {
+            int capacity = size << 1;
+            kinds = Arrays.copyOf(kinds, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        kinds[size] = type.ordinal();
+        firstChildren[size] = firstChild;
+        nextSiblings[size] = NONE;
+        tokenIndexes[size] = tokenIndex;
+        lines[size] = line;
+        return size++;
+    }
+
+    private void push(int node) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize << 1);
+        }
+        stack[stackSize++] = node;
+    }
+
+    /**
+     * 记下当前构造栈的位置, 之后生成的节点将成为finish所生成节点的子节点
+     */
+    public int mark() {
+        return stackSize;
+    }
+
+    /**
+     * 以token序列中的token生成终结符节点并压入构造栈
+     * @return 新节点
+     */
+    public int leaf(TokenStream tokens, int index) {
+        int line = tokens.getLine(index);
+        int token = index;
+        if (leafCopies != null) {
+            token = leafCopies.add(tokens.getType(index), tokens.getOffset(index), tokens.getLength(index), line, tokens.getIdent(index));
+        }
+        int node = newNode(NodeType.EndNode, NONE, token, line);
+        push(node);
+        return node;
+    }
+
+    /**
+     * 将mark之后压入构造栈的节点依次收为一个新的非终结符节点的子节点, 并将新节点压入构造栈
+     * @return 新节点
+     */
+    public int finish(NodeType type, int mark) {
+        if (mark >= stackSize) {
+            throw new IndexOutOfBoundsException("Node " + type + " has no children");
+        }
+        for (int i = mark; i < stackSize - 1; i++) {
+            nextSiblings[stack[i]] = stack[i + 1];
+        }
+        int lastChild = stack[stackSize - 1];
+        int node = newNode(type, stack[mark], NONE, lines[lastChild]);
+        stackSize = mark;
+        push(node);
+        return node;
+    }
+
+    /**
+     * 语法分析结束后, 构造栈中唯一的节点即为根节点
+     */
+    public VNode getRoot() {
+        return getNode(stack[stackSize - 1]);
+    }
+
+    public VNode getNode(int node) {
+        return node == NONE ? null : new VNode(this, node);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NodeType getNodeType(int node) {
+        return NODE_TYPES[kinds[node]];
+    }
+
+    /**
+     * @return 第一个子节点, 没有则为-1
+     */
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return 下一个兄弟节点, 没有则为-1
+     */
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int getLine(int node) {
+        return lines[node];
+    }
+
+    public TokenType getTokenType(int node) {
+        return leafTokens.getType(tokenIndexes[node]);
+    }
+
+    public String getTokenValue(int node) {
+        return leafTokens.getValue(tokenIndexes[node]);
+    }
+
+    public int getTokenNumValue(int node) {
+        return leafTokens.getNumValue(tokenIndexes[node]);
+    }
+
+    /**
+     * @return 标识符在IdentPool中的编号, 不是标识符时为-1
+     */
+    public int getTokenIdent(int node) {
+        return leafTokens.getIdent(tokenIndexes[node]);
+    }
+
+    /**
+     * 获取节点输出时的值
+     * @return 形如: &lt;Decl&gt; 或 SEMICON ; 的字符串, 不需要输出的节点为空串
+     */
+    public String getLabel(int node) {
+        if (kinds[node] == NodeType.EndNode.ordinal()) {
+            return getTokenType(node) + " " + getTokenValue(node);
+        }
+        return LABELS[kinds[node]];
+    }
+
+    /**
+     * 按后序输出以node为根的子树, 平铺的二元表达式按文法还原为左递归的形式输出
+     * 以显式栈代替递归, 嵌套很深的语句和表达式不会耗尽调用栈
+     * 栈中每一项为(节点, 动作): 动作非负时表示在该二元表达式层级下访问节点, PRINT_NODE表示输出节点自身,
+     * 小于PRINT_NODE时表示输出层级为PRINT_NODE - 动作的二元表达式节点
+     */
+    public void print(int node, OutputSink sink) {
+        IntStack tasks = new IntStack();
+        IntStack children = new IntStack();
+        tasks.push(node);
+        tasks.push(0);
+        while (!tasks.isEmpty()) {
+            int action = tasks.pop();
+            int cur = tasks.pop();
+            if (action == PRINT_NODE) {
+                String label = getLabel(cur);
+                if (!label.isEmpty()) {
+                    sink.add(label);
+                }
+            } else if (action < PRINT_NODE) {
+                sink.add(LABELS[BINARY_TYPES[PRINT_NODE - action].ordinal()]);
+            } else if (action > 0 && getBinaryLevel(getNodeType(cur)) == action) {
+                // 操作数 {运算符 操作数}: 每个操作数之后都归约出一个当前层级的节点
+                pushChildren(cur, children);
+                while (!children.isEmpty()) {
+                    int child = children.pop();
+                    if (kinds[child] == NodeType.EndNode.ordinal()) {
+                        tasks.push(child);
+                        tasks.push(PRINT_NODE);
+                    } else {
+                        tasks.push(child);
+                        tasks.push(PRINT_NODE - action);
+                        tasks.push(child);
+                        tasks.push(action - 1);
+                    }
+                }
+            } else if (action > 0) {
+                // 被省略的层级
+                tasks.push(cur);
+                tasks.push(PRINT_NODE - action);
+                tasks.push(cur);
+                tasks.push(action - 1);
+            } else {
+                NodeType type = getNodeType(cur);
+                int childLevel = 0;
+                if (type == NodeType.Exp || type == NodeType.ConstExp) {
+                    childLevel = ADD_EXP_LEVEL;
+                } else if (type == NodeType.Cond) {
+                    childLevel = LOR_EXP_LEVEL;
+                }
+                tasks.push(cur);
+                tasks.push(PRINT_NODE);
+                pushChildren(cur, children);
+                while (!children.isEmpty()) {
+                    tasks.push(children.pop());
+                    tasks.push(childLevel);
+                }
+            }
+        }
+    }
+
+    /**
+     * 将子节点依次压入栈中, 弹出时即为逆序
+     */
+    private void pushChildren(int node, IntStack children) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            children.push(child);
+        }
+    }
+}
@@ -1,50 +1,28 @@
 package node;
 
-import token.Token;
-import utils.IOUtils;
+import token.TokenType;
+import utils.OutputSink;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
+/**
+ * 语法树节点的轻量句柄, 节点本身存放在SyntaxTree中
+ * 句柄随用随建, 不保存任何节点数据
+ */
 public class VNode {
-    private List<VNode> childrenNodes;
-    private NodeType nodeType;
-    private String value;
-    private int line; // 代表当前node最后一个token所在的行数
-
-    private static final Set<NodeType> justifiedNodeTypes = Set.of(
-            NodeType.MulExp, NodeType.AddExp, NodeType.RelExp, NodeType.EqExp, NodeType.LAndExp, NodeType.LOrExp
-    );
-
-    public VNode(List<VNode> childrenNodes, NodeType nodeType) {
-        this.childrenNodes = new ArrayList<>(childrenNodes);
-        this.nodeType = nodeType;
-        this.value = '<' + nodeType.toString() + '>';
-        this.line = getLastChildNode().getLine();
-        // 以下节点类型不需要输出
-        if (nodeType == NodeType.BlockItem || nodeType == NodeType.Decl || nodeType == NodeType.BType) {
-            this.value = "";
-        }
-    }
+    private final SyntaxTree tree;
+    private final int node;
 
-    // 以Token创建的叶子节点都是终结符
-    public VNode(Token token) {
-        this.value = token.toString();
-        this.nodeType = NodeType.EndNode;
-        this.line = token.getLine();
+    VNode(SyntaxTree tree, int node) {
+        this.tree = tree;
+        this.node = node;
     }
 
     public NodeType getNodeType() {
-        return nodeType;
-    }
-
-    public void setNodeType(NodeType nodeType) {
-        this.nodeType = nodeType;
-    }
-
-    public void addChildNode(VNode childNode) {
-        childrenNodes.add(childNode);
+        return tree.getNodeType(node);
     }
 
     /**
@@ -52,31 +30,125 @@ public class VNode {
      * @return 行数(非终结符的行数为最后一个子节点的行数)
      */
     public int getLine() {
-        return line;
+        return tree.getLine(node);
     }
 
+    /**
+     * 获取当前节点的所有子节点
+     * 子节点以兄弟链表的形式存放, 这里每次调用都会新建列表, 只需顺序访问时用children
+     */
     public List<VNode> getChildrenNodes() {
+        List<VNode> childrenNodes = new ArrayList<>();
+        for (int child = tree.getFirstChild(node); child != -1; child = tree.getNextSibling(child)) {
+            childrenNodes.add(new VNode(tree, child));
+        }
         return childrenNodes;
     }
 
+    /**
+     * 按兄弟链表顺序遍历子节点, 不构造列表
+     */
+    public Iterable<VNode> children() {
+        return () -> new Iterator<>() {
+            private int child = tree.getFirstChild(node);
+
+            @Override
+            public boolean hasNext() {
+                return child != -1;
+            }
+
+            @Override
+            public VNode next() {
+                if (child == -1) {
+                    throw new NoSuchElementException();
+                }
+                VNode next = new VNode(tree, child);
+                child = tree.getNextSibling(child);
+                return next;
+            }
+        };
+    }
+
+    public int getChildCount() {
+        int count = 0;
+        for (int child = tree.getFirstChild(node); child != -1; child = tree.getNextSibling(child)) {
+            count++;
+        }
+        return count;
+    }
+
     /**
      * 获取当前语法树节点的第index个子节点
      * @param index 子节点的下标
      * @return 对应子结点对象, 下标超出则为null
      */
     public VNode getChildNode(int index) {
-        if (index < 0 || index >= childrenNodes.size()) {
+        if (index < 0) {
             return null;
         }
-        return childrenNodes.get(index);
+        int child = tree.getFirstChild(node);
+        for (int i = 0; i < index && child != -1; i++) {
+            child = tree.getNextSibling(child);
+        }
+        return tree.getNode(child);
     }
 
     public VNode get1stChildNode() {
-        return childrenNodes.get(0);
+        int child = tree.getFirstChild(node);
+        if (child == -1) {
+            throw new IndexOutOfBoundsException("Index 0 out of bounds for length 0");
+        }
+        return new VNode(tree, child);
     }
 
     public VNode getLastChildNode() {
-        return childrenNodes.get(childrenNodes.size() - 1);
+        int child = tree.getFirstChild(node);
+        if (child == -1) {
+            throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
+        }
+        for (int next = tree.getNextSibling(child); next != -1; next = tree.getNextSibling(next)) {
+            child = next;
+        }
+        return new VNode(tree, child);
+    }
+
+    /**
+     * 获取下一个兄弟节点
+     * @return 下一个兄弟节点, 没有则为null
+     */
+    public VNode getNextSibling() {
+        return tree.getNode(tree.getNextSibling(node));
+    }
+
+    /**
+     * 获取终结符节点对应token的类型
+     * @return TokenType, 非终结符为null
+     */
+    public TokenType getTokenType() {
+        return getNodeType() == NodeType.EndNode ? tree.getTokenType(node) : null;
+    }
+
+    /**
+     * 获取终结符节点对应token的值
+     * @return 形如";"或"a"的字符串, 非终结符为null
+     */
+    public String getTokenValue() {
+        return getNodeType() == NodeType.EndNode ? tree.getTokenValue(node) : null;
+    }
+
+    /**
+     * 获取整数常量终结符的数值
+     */
+    public int getTokenNumValue() {
+        return tree.getTokenNumValue(node);
+    }
+
+    /**
+     * 获取标识符终结符在IdentPool中的编号, 符号表以此作为键
+     * @return 编号, 不是标识符时为-1
+     */
+    public int getTokenIdent() {
+        return tree.getTokenIdent(node);
     }
 
     /**
@@ -84,17 +156,23 @@ public class VNode {
      * @return 形如: &lt;Decl&gt; 或 SEMICON ; 的字符串
      */
     public String getValue() {
-        return value;
+        return tree.getLabel(node);
     }
 
-    public void printToBuffer() {
-        if (childrenNodes != null) {
-            for (VNode childNode : childrenNodes) {
-                childNode.printToBuffer();
-            }
-        }
-        if (!this.value.isEmpty()) {
-            IOUtils.appendBuffer(this.value);
+    public void printToSink(OutputSink sink) {
+        tree.print(node, sink);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof VNode other) {
+            return tree == other.tree && node == other.node;
         }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return node;
     }
 }
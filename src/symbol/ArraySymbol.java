@@ -1,6 +1,7 @@
 package symbol;
 
 public class ArraySymbol implements Symbol{
+    private int ident;
     private String name;
     /**
      * -1 for void, 0 for variable, 1 for array, 2 for matrix
@@ -11,7 +12,15 @@ public class ArraySymbol implements Symbol{
      */
     private boolean isConst;
 
+    /**
+     * 表达式的类型等不加入符号表的符号, 没有标识符编号
+     */
     public ArraySymbol(String name, int dimension, boolean isConst) {
+        this(-1, name, dimension, isConst);
+    }
+
+    public ArraySymbol(int ident, String name, int dimension, boolean isConst) {
+        this.ident = ident;
         this.name = name;
         this.dimension = dimension;
         this.isConst = isConst;
@@ -21,6 +30,11 @@ public class ArraySymbol implements Symbol{
         return name;
     }
 
+    @Override
+    public int getIdent() {
+        return ident;
+    }
+
     /**
      * 获取维度
      * @return 维度 (-1 for void, 0 for variable, 1 for array, 2 for matrix)
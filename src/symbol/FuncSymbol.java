@@ -3,11 +3,13 @@ package symbol;
 import java.util.List;
 
 public class FuncSymbol implements Symbol{
+    private int ident;
     private String name;
     private FuncType type;
     private List<ArraySymbol> params;
 
-    public FuncSymbol(String name, FuncType type, List<ArraySymbol> params) {
+    public FuncSymbol(int ident, String name, FuncType type, List<ArraySymbol> params) {
+        this.ident = ident;
         this.name = name;
         this.type = type;
         this.params = params;
@@ -17,6 +19,11 @@ public class FuncSymbol implements Symbol{
         return name;
     }
 
+    @Override
+    public int getIdent() {
+        return ident;
+    }
+
     public FuncType getType() {
         return type;
     }
@@ -0,0 +1,124 @@
+package symbol;
+
+import utils.IntStack;
+
+import java.util.Arrays;
+
+/**
+ * 以一张表存放所有作用域的符号表, 以标识符在IdentPool中的编号为下标
+ * 每个标识符对应其最内层的定义, 各定义通过shadowed链接到被其遮蔽的外层(或同层之前的)定义,
+ * 进入作用域时记下撤销日志的位置, 离开时按日志逆序撤销该作用域中的定义, 因此查找不随嵌套层数变慢
+ * 每个定义记录加入的顺序, getView可以得到只包含此前加入的定义的只读视图:
+ * 全局作用域构造完毕后, 各函数体在以视图为外层的ScopeTable中查找, 与依次处理时看到的符号相同
+ */
+public class ScopeTable<T> {
+    @SuppressWarnings("unchecked")
+    private Entry<T>[] entries = (Entry<T>[]) new Entry<?>[64];
+    // 撤销日志, 按加入顺序记录各定义的标识符编号
+    private final IntStack log = new IntStack();
+    // 各层作用域开始时撤销日志的长度
+    private final IntStack scopeMarks = new IntStack();
+    // 外层作用域, 本表中找不到时在其中查找
+    private final View<T> outer;
+    private int order = 0;
+
+    public ScopeTable() {
+        this(null);
+    }
+
+    public ScopeTable(View<T> outer) {
+        this.outer = outer;
+    }
+
+    public void enterScope() {
+        scopeMarks.push(log.size());
+    }
+
+    /**
+     * 离开当前作用域, 撤销其中的定义, 被遮蔽的定义重新可见
+     */
+    public void exitScope() {
+        int mark = scopeMarks.pop();
+        while (log.size() > mark) {
+            int ident = log.pop();
+            entries[ident] = entries[ident].shadowed;
+        }
+    }
+
+    /**
+     * 在当前作用域中加入定义, 同名的定义被遮蔽
+     */
+    public void put(int ident, T value) {
+        if (ident >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(ident + 1, entries.length << 1));
+        }
+        entries[ident] = new Entry<>(value, scopeMarks.size(), order++, entries[ident]);
+        log.push(ident);
+    }
+
+    /**
+     * 查找最内层的定义
+     */
+    public T get(int ident) {
+        Entry<T> entry = ident < entries.length ? entries[ident] : null;
+        if (entry != null) {
+            return entry.value;
+        }
+        return outer == null ? null : outer.get(ident);
+    }
+
+    /**
+     * 只在当前作用域中查找
+     */
+    public T getInCurrentScope(int ident) {
+        Entry<T> entry = ident < entries.length ? entries[ident] : null;
+        return entry != null && entry.depth == scopeMarks.size() ? entry.value : null;
+    }
+
+    /**
+     * 获取当前的只读视图, 之后加入的定义在视图中不可见
+     * 视图创建后本表不能再撤销其中可见的定义, 一般只对全局作用域使用
+     */
+    public View<T> getView() {
+        return new View<>(this, order);
+    }
+
+    private T get(int ident, int limit) {
+        Entry<T> entry = ident < entries.length ? entries[ident] : null;
+        while (entry != null && entry.order >= limit) {
+            entry = entry.shadowed;
+        }
+        if (entry != null) {
+            return entry.value;
+        }
+        return outer == null ? null : outer.get(ident);
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final int depth;
+        private final int order;
+        private final Entry<T> shadowed;
+
+        private Entry(T value, int depth, int order, Entry<T> shadowed) {
+            this.value = value;
+            this.depth = depth;
+            this.order = order;
+            this.shadowed = shadowed;
+        }
+    }
+
+    public static class View<T> {
+        private final ScopeTable<T> table;
+        private final int limit;
+
+        private View(ScopeTable<T> table, int limit) {
+            this.table = table;
+            this.limit = limit;
+        }
+
+        public T get(int ident) {
+            return table.get(ident, limit);
+        }
+    }
+}
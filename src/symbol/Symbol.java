@@ -3,4 +3,9 @@ package symbol;
 public interface Symbol {
     boolean match(String name);
     String getName();
+
+    /**
+     * @return 标识符在IdentPool中的编号, 符号表以此作为键
+     */
+    int getIdent();
 }
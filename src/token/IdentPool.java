@@ -0,0 +1,95 @@
+package token;
+
+import java.util.Arrays;
+
+/**
+ * 标识符池: 将源代码中的标识符映射为从0开始连续的编号
+ * 同名的标识符只在第一次出现时构造一次String, 之后的符号表都以编号而非字符串作为键
+ * 以开放寻址的哈希表实现, 查找时直接比较源代码中的字符, 不构造临时的String
+ */
+public class IdentPool {
+    private static final int EMPTY = -1;
+
+    // 哈希表的各个槽存放标识符编号, 容量为2的幂
+    private int[] table = new int[64];
+    private String[] names = new String[32];
+    private int[] hashes = new int[32];
+    private int size = 0;
+
+    public IdentPool() {
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * 获取source[offset, offset + length)处标识符的编号, 第一次出现时分配新编号
+     */
+    public int intern(char[] source, int offset, int length) {
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + source[i];
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == EMPTY) {
+                return add(new String(source, offset, length), hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], source, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size << 1);
+            hashes = Arrays.copyOf(hashes, size << 1);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        table[slot] = id;
+        // 装载因子不超过1/2
+        if (size << 1 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length << 1];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, char[] source, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,216 @@
+package token;
+
+/**
+ * 以并列的int数组(结构数组)紧凑地存放token序列
+ * 每个token只记录类型序号, 在源代码中的起始下标, 长度和行号, 其值在需要时才从源代码中解码
+ * 标识符另外记录其在IdentPool中的编号, 其值直接取自IdentPool
+ * 存储为容量为2的幂的环形数组: 不调用release时即为完整的token序列, 调用release后则只保留其后的窗口
+ */
+public class TokenBuffer implements TokenStream {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final char[] source;
+    private final IdentPool identPool;
+    // 仍被保留的第一个token的下标
+    private int first = 0;
+    // 已加入的token总数, 即下一个token的下标
+    private int size = 0;
+    private int mask;
+    private int[] types;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] lines;
+    // 标识符的编号, 其余token为-1
+    private int[] idents;
+    // 按需解码出的token值, 未解码的位置为null
+    private String[] values = null;
+
+    public TokenBuffer(char[] source, IdentPool identPool) {
+        this(source, 16, identPool);
+    }
+
+    public TokenBuffer(char[] source, int initialCapacity, IdentPool identPool) {
+        this.source = source;
+        this.identPool = identPool;
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+        mask = capacity - 1;
+        types = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        idents = new int[capacity];
+    }
+
+    /**
+     * 在末尾加入一个token
+     * @param type token类型
+     * @param offset token在源代码中的起始下标
+     * @param length token在源代码中所占的长度
+     * @param line token所在行号
+     * @param ident 标识符在IdentPool中的编号, 不是标识符时为-1
+     * @return 新token的下标
+     */
+    public int add(TokenType type, int offset, int length, int line, int ident) {
+        if (size - first == types.length) {
+            grow();
+        }
+        int slot = size & mask;
+        types[slot] = type.ordinal();
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        lines[slot] = line;
+        idents[slot] = ident;
+        if (values != null) {
+            values[slot] = null;
+        }
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = types.length << 1;
+        int newMask = capacity - 1;
+        int[] newTypes = new int[capacity];
+        int[] newOffsets = new int[capacity];
+        int[] newLengths = new int[capacity];
+        int[] newLines = new int[capacity];
+        int[] newIdents = new int[capacity];
+        String[] newValues = values == null ? null : new String[capacity];
+        for (int i = first; i < size; i++) {
+            newTypes[i & newMask] = types[i & mask];
+            newOffsets[i & newMask] = offsets[i & mask];
+            newLengths[i & newMask] = lengths[i & mask];
+            newLines[i & newMask] = lines[i & mask];
+            newIdents[i & newMask] = idents[i & mask];
+            if (newValues != null) {
+                newValues[i & newMask] = values[i & mask];
+            }
+        }
+        types = newTypes;
+        offsets = newOffsets;
+        lengths = newLengths;
+        lines = newLines;
+        idents = newIdents;
+        values = newValues;
+        mask = newMask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index >= first && index < size;
+    }
+
+    @Override
+    public TokenType getType(int index) {
+        return TOKEN_TYPES[types[slot(index)]];
+    }
+
+    @Override
+    public int getLine(int index) {
+        return lines[slot(index)];
+    }
+
+    /**
+     * 获取token的值, 标识符的值取自IdentPool, 其余token第一次访问时才从源代码中截取
+     * @return (String) Token 的值, 形如 int, getint, {, "hello world"等
+     */
+    @Override
+    public String getValue(int index) {
+        int slot = slot(index);
+        if (idents[slot] >= 0) {
+            return identPool.getName(idents[slot]);
+        }
+        if (values == null) {
+            values = new String[types.length];
+        }
+        String value = values[slot];
+        if (value == null) {
+            if (types[slot] == TokenType.INTCON.ordinal()) {
+                value = String.valueOf(getNumValue(index));
+            } else {
+                value = new String(source, offsets[slot], lengths[slot]);
+            }
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 获取整数常量token的数值
+     */
+    @Override
+    public int getNumValue(int index) {
+        int slot = slot(index);
+        int value = 0;
+        for (int i = offsets[slot], end = i + lengths[slot]; i < end; i++) {
+            value = value * 10 + Character.digit(source[i], 10);
+        }
+        return value;
+    }
+
+    @Override
+    public int getIdent(int index) {
+        return idents[slot(index)];
+    }
+
+    @Override
+    public int getOffset(int index) {
+        return offsets[slot(index)];
+    }
+
+    @Override
+    public int getLength(int index) {
+        return lengths[slot(index)];
+    }
+
+    @Override
+    public char[] getSource() {
+        return source;
+    }
+
+    @Override
+    public IdentPool getIdentPool() {
+        return identPool;
+    }
+
+    /**
+     * 将下标处的token构造为Token对象(仅在需要完整对象时使用)
+     */
+    @Override
+    public Token get(int index) {
+        TokenType type = getType(index);
+        if (type == TokenType.INTCON) {
+            return new Token(type, getNumValue(index), getLine(index));
+        }
+        return new Token(type, getValue(index), getLine(index));
+    }
+
+    /**
+     * Lexer一次性分析出的完整token序列不是流式的, 作为LexerStream的环形缓冲区时由LexerStream负责释放
+     */
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void release(int index) {
+        index = Math.min(index, size);
+        if (values != null) {
+            for (int i = first; i < index; i++) {
+                values[i & mask] = null;
+            }
+        }
+        first = Math.max(first, index);
+    }
+
+    private int slot(int index) {
+        if (index < first || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index & mask;
+    }
+}
@@ -0,0 +1,57 @@
+package token;
+
+/**
+ * Parser所读取的token序列, 下标为token在整个源文件中的序号
+ */
+public interface TokenStream {
+    /**
+     * 判断下标处的token是否存在, 流式的实现会在此按需从Lexer拉取token
+     */
+    boolean has(int index);
+
+    TokenType getType(int index);
+
+    int getLine(int index);
+
+    String getValue(int index);
+
+    int getNumValue(int index);
+
+    /**
+     * 标识符在IdentPool中的编号, 不是标识符时为-1
+     */
+    int getIdent(int index);
+
+    /**
+     * token在源代码中的起始下标
+     */
+    int getOffset(int index);
+
+    /**
+     * token在源代码中所占的长度
+     */
+    int getLength(int index);
+
+    /**
+     * token所在的源代码
+     */
+    char[] getSource();
+
+    /**
+     * token序列中标识符所属的IdentPool
+     */
+    IdentPool getIdentPool();
+
+    Token get(int index);
+
+    /**
+     * 是否为流式的实现: 流式的实现在release后丢弃之前的token,
+     * 否则所有token在分析结束后仍然可以按下标访问
+     */
+    boolean isStreaming();
+
+    /**
+     * 声明下标之前的token不会再被访问, 流式的实现可以将其丢弃
+     */
+    void release(int index);
+}
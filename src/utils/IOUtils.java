@@ -1,10 +1,13 @@
 package utils;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Paths;
-import java.util.Scanner;
-import java.util.StringJoiner;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class IOUtils {
     private static final String INPUT_FILE = "testfile.txt";
@@ -12,17 +15,64 @@ public class IOUtils {
     private static final String DEBUG_FILE = "debug.txt";
     private static final String ERROR_FILE = "error.txt";
     private static final String IR_FILE = "llvm_ir.txt";
-    private static StringJoiner buffer = new StringJoiner("\n");
-    public static String readFile(String path) throws IOException {
-        InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(path)));
-        Scanner scanner = new Scanner(in);
-        StringJoiner stringJoiner = new StringJoiner("\n");
-        while (scanner.hasNextLine()) {
-            stringJoiner.add(scanner.nextLine());
+    // 超过该大小的源文件使用内存映射读取
+    private static final long MMAP_THRESHOLD = 1 << 20;
+
+    /**
+     * 用FileChannel一次性读入文件(大文件使用内存映射), 并一次性解码为字符数组供Lexer直接扫描
+     * 与按行读取再以"\n"拼接的结果一致: 各种换行符统一为'\n', 且去掉末尾的换行符
+     * @param path 文件路径
+     * @return 恰好容纳文件内容的字符数组
+     */
+    public static char[] readChars(String path) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            if (size >= MMAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                }
+                bytes.flip();
+            }
+        }
+        CharBuffer chars = Charset.defaultCharset().decode(bytes);
+        char[] array = chars.array();
+        int length = normalizeLineBreaks(array, chars.limit());
+        return length == array.length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * 原地将\r\n, \r等换行符统一为'\n', 并去掉末尾的一个换行符
+     * @return 处理后的长度
+     */
+    private static int normalizeLineBreaks(char[] chars, int length) {
+        int w = 0;
+        while (w < length && !isLineBreak(chars[w])) w++;
+        for (int r = w; r < length; r++) {
+            char c = chars[r];
+            if (c == '\r') {
+                if (r + 1 < length && chars[r + 1] == '\n') r++;
+                c = '\n';
+            } else if (isLineBreak(c)) {
+                c = '\n';
+            }
+            chars[w++] = c;
         }
-        scanner.close();
-        in.close();
-        return stringJoiner.toString();
+        if (w > 0 && chars[w - 1] == '\n') w--;
+        return w;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+    }
+
+    public static String readFile(String path) throws IOException {
+        return new String(readChars(path));
     }
 
     public static void writeFile(String path, String content) throws IOException {
@@ -32,35 +82,46 @@ public class IOUtils {
         }
     }
 
-    public static void appendBuffer(String content) {
-        buffer.add(content);
+    public static OutputSink openOutput() throws IOException {
+        return new OutputSink(OUTPUT_FILE);
     }
 
-    public static void clearBuffer() {
-        buffer = new StringJoiner("\n");
+    public static OutputSink openDebug() throws IOException {
+        return new OutputSink(DEBUG_FILE);
     }
 
-    public static void writeBuffer2OutPut() throws IOException {
-        writeFile(OUTPUT_FILE, buffer.toString());
+    public static OutputSink openError() throws IOException {
+        return new OutputSink(ERROR_FILE);
     }
 
-    public static void writeBuffer2Debug() throws IOException {
-        writeFile(DEBUG_FILE, buffer.toString());
+    public static OutputSink openIR() throws IOException {
+        return new OutputSink(IR_FILE);
     }
 
-    public static void writeBuffer2Error() throws IOException {
-        writeFile(ERROR_FILE, buffer.toString());
+    /**
+     * 批量编译时各源文件的错误输出, 形如 testfile1_error.txt
+     * @param base 源文件去掉扩展名后的路径
+     */
+    public static OutputSink openError(String base) throws IOException {
+        return new OutputSink(base + '_' + ERROR_FILE);
     }
 
-    public static void writeBuffer2IR() throws IOException {
-        writeFile(IR_FILE, buffer.toString());
+    /**
+     * 批量编译时各源文件的中间代码输出, 形如 testfile1_llvm_ir.txt
+     * @param base 源文件去掉扩展名后的路径
+     */
+    public static OutputSink openIR(String base) throws IOException {
+        return new OutputSink(base + '_' + IR_FILE);
     }
 
-    public static String readInput() throws IOException {
-        return readFile(INPUT_FILE);
+    /**
+     * 判断文件是否为批量编译的输出, 避免再次作为源文件编译
+     */
+    public static boolean isOutputFile(String name) {
+        return name.endsWith('_' + ERROR_FILE) || name.endsWith('_' + IR_FILE);
     }
 
-    public static int getBufferLength() {
-        return buffer.length();
+    public static char[] readInput() throws IOException {
+        return readChars(INPUT_FILE);
     }
 }
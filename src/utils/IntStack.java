@@ -0,0 +1,53 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * 存放int的栈, 用于以显式栈代替递归时避免装箱
+ */
+public class IntStack {
+    private int[] elements;
+    private int size = 0;
+
+    public IntStack() {
+        this(16);
+    }
+
+    public IntStack(int initialCapacity) {
+        elements = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = value;
+    }
+
+    public int pop() {
+        return elements[--size];
+    }
+
+    public int peek() {
+        return elements[size - 1];
+    }
+
+    /**
+     * 获取从栈顶往下第depth个元素, depth为0即栈顶
+     */
+    public int peek(int depth) {
+        return elements[size - 1 - depth];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,158 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 流式的输出文件, 内容边生成边经过固定大小的直接缓冲区写入FileChannel, 不在内存中累积整个输出
+ * add与StringJoiner("\n")的语义一致: 各项之间以换行分隔, 末尾没有换行;
+ * append则直接追加到当前项中, 便于不经过中间字符串直接输出
+ */
+public class OutputSink implements Appendable, Closeable {
+    private static final int CHAR_CAPACITY = 8192;
+    private static final int BYTE_CAPACITY = 64 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    // 待编码的字符
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_CAPACITY);
+    private final char[] charArray = chars.array();
+    // 已编码, 待写入文件的字节
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_CAPACITY);
+    private boolean empty = true;
+
+    public OutputSink(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 开始新的一项, 除第一项外都先输出一个换行
+     */
+    public OutputSink add(CharSequence content) {
+        if (!empty) {
+            append('\n');
+        }
+        empty = false;
+        return append(content);
+    }
+
+    /**
+     * 开始新的一项而不输出内容, 之后用append填充该项
+     */
+    public OutputSink newItem() {
+        return add("");
+    }
+
+    @Override
+    public OutputSink append(CharSequence content) {
+        return append(content, 0, content.length());
+    }
+
+    @Override
+    public OutputSink append(CharSequence content, int start, int end) {
+        while (start < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(end - start, chars.remaining());
+            int pos = chars.position();
+            if (content instanceof String s) {
+                s.getChars(start, start + n, charArray, pos);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    charArray[pos + i] = content.charAt(start + i);
+                }
+            }
+            chars.position(pos + n);
+            start += n;
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    public OutputSink append(int value) {
+        if (value < 0) {
+            append('-');
+            if (value == Integer.MIN_VALUE) {
+                return append("2147483648");
+            }
+            value = -value;
+        }
+        if (value >= 10) {
+            append(value / 10);
+        }
+        return append((char) ('0' + value % 10));
+    }
+
+    /**
+     * 是否还没有输出任何一项
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    private void encode(boolean endOfInput) {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+        }
+        // 被截断的代理对留到下一次编码
+        chars.compact();
+    }
+
+    private void drain() {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+            drain();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+}